@@ -0,0 +1,82 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtrado de las columnas mapeadas con {@link FileProcessingService#dataFilter}.
+ * <p> El filtro devuelve una vista, así que cada medida incluye además leer todas las celdas filtradas,
+ * que es lo que hace después la actualización de indicadores.
+ * <p> Con {@code source=mapped} la tabla se lee proyectada de una instantánea ({@link TableSnapshot}),
+ * como la guarda {@link FileStorageService}.
+ * <p> La memoria reservada por el filtro (que no debería copiar filas) se mide con el perfilador de JMH:
+ * {@code -Djmh.args="-prof gc DataFilterBenchmark"} ('gc.alloc.rate.norm', bytes por operación).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class DataFilterBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"heap", "mapped"})
+    private String source;
+
+    private final FileProcessingService processingService = new FileProcessingService(SurveyGenerator.noMetrics());
+    private final Map<String, String> columnMapping = SurveyGenerator.columnMapping(4);
+    private ParsedTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FilePreviewService previewService = new FilePreviewService(SurveyGenerator.noMetrics(), 200, 1000, 200, 1);
+        table = previewService.previsualizeCSV(SurveyGenerator.csv(rows));
+        previewService.shutdown();
+        if ("mapped".equals(source)) {
+            Path file = Files.createTempFile("snapshot-", ".upload");
+            file.toFile().deleteOnExit();
+            try (OutputStream out = Files.newOutputStream(file)) {
+                TableSnapshot.write(out, Map.of("", table));
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                table = TableSnapshot.map(channel, 0).get("");
+            }
+        }
+    }
+
+    @Benchmark
+    public void dataFilter(Blackhole bh) {
+        List<Map<String, Object>> filtered = processingService.dataFilter(table, columnMapping, SurveyGenerator.YEAR_COLUMN);
+        for (Map<String, Object> row : filtered) {
+            bh.consume(row.get(SurveyGenerator.YEAR_COLUMN));
+            for (String column : columnMapping.keySet()) {
+                bh.consume(row.get(column));
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.HeaderDetection;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detección de la fila de cabecera de una hoja ya cargada (la que hace {@link FilePreviewService} con los .xls
+ * y al indexar un libro).
+ * <p> Solo se recorre la ventana del principio de la hoja, así que el tiempo no debería crecer con las filas
+ * ni con el ancho de la hoja ({@code wide}: las instrucciones están en una columna muy a la derecha):
+ * el objetivo es menos de 1 ms (1000 us) por hoja en todos los casos. La hoja se construye con el modelo completo de POI, por lo que el tamaño máximo es 100.000 filas
+ * (un millón no cabe en la memoria de un benchmark).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class HeaderDetectionBenchmark {
+
+    private static final int WIDE_COLUMN = 16000;
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    @Param({"false", "true"})
+    private boolean wide;
+
+    private HeaderDetector detector;
+    private Workbook workbook;
+    private Sheet sheet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        detector = new HeaderDetector(200);
+        workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet("Encuesta");
+        if (wide) {
+            for (int r = 0; r < SurveyGenerator.INSTRUCTION_ROWS; r++) {
+                sheet.createRow(r).createCell(WIDE_COLUMN).setCellValue("Texto de ayuda " + r);
+            }
+        } else {
+            SurveyGenerator.writeInstructions(sheet);
+        }
+        Row header = sheet.createRow(SurveyGenerator.INSTRUCTION_ROWS);
+        List<String> headers = SurveyGenerator.headers();
+        for (int c = 0; c < headers.size(); c++) {
+            header.createCell(c).setCellValue(headers.get(c));
+        }
+        for (int r = 0; r < rows; r++) {
+            Row row = sheet.createRow(SurveyGenerator.INSTRUCTION_ROWS + 1 + r);
+            row.createCell(0).setCellValue(2000 + r % 25);
+            row.createCell(1).setCellValue(r);
+            for (int q = 1; q <= SurveyGenerator.QUESTIONS; q++) {
+                row.createCell(1 + q).setCellValue(1 + (r + q) % 5);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Benchmark
+    public HeaderDetection detectHeader() {
+        return detector.detect(sheet);
+    }
+}
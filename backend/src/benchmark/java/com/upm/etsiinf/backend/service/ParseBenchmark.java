@@ -0,0 +1,74 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura completa de una encuesta subida: CSV con {@link FilePreviewService#previsualizeCSV} y Excel como lo lee
+ * la aplicación, indexando el libro ({@link FilePreviewService#indexExcel}) y leyendo después cada hoja
+ * ({@link FilePreviewService#readExcelSheet}).
+ * <p> Los archivos se generan una vez por combinación de parámetros, fuera de la medida.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ParseBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private FilePreviewService previewService;
+    private MockMultipartFile csv;
+    private Path xlsx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        previewService = new FilePreviewService(SurveyGenerator.noMetrics(), 200, 1000, 200, 0);
+        csv = SurveyGenerator.csv(rows);
+        xlsx = Files.createTempFile("survey-", ".xlsx");
+        Files.write(xlsx, SurveyGenerator.xlsx(rows).getBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        previewService.shutdown();
+        Files.deleteIfExists(xlsx);
+    }
+
+    @Benchmark
+    public ParsedTable previsualizeCSV() throws IOException {
+        return previewService.previsualizeCSV(csv);
+    }
+
+    @Benchmark
+    public Map<String, ParsedTable> readExcelSheets() throws IOException {
+        Map<String, ParsedTable> sheets = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> sheet : previewService.indexExcel(xlsx, null).entrySet()) {
+            sheets.put(sheet.getKey(), previewService.readExcelSheet(xlsx, sheet.getKey(), sheet.getValue()));
+        }
+        return sheets;
+    }
+}
@@ -0,0 +1,162 @@
+package com.upm.etsiinf.backend.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Genera encuestas sintéticas con la forma de las que se suben a la aplicación: una columna con el curso académico,
+ * otra con la titulación (valor del atributo) y una columna numérica por pregunta.
+ * <p>
+ * Los valores salen de un generador con semilla fija, de modo que cada ejecución de los benchmarks lee exactamente
+ * el mismo archivo. En el Excel, la tabla va precedida de dos filas de instrucciones, como en las encuestas reales,
+ * para que la detección de cabecera tenga que buscarla.
+ * </p>
+ */
+final class SurveyGenerator {
+
+    static final String YEAR_COLUMN = "Curso";
+    static final String DEGREE_COLUMN = "Titulación";
+    static final int QUESTIONS = 8;
+    static final int INSTRUCTION_ROWS = 2;
+
+    private static final String[] YEARS = {"2021-22", "2022-23", "2023-24"};
+    private static final long SEED = 20240601L;
+
+    private SurveyGenerator() {
+    }
+
+    /**
+     * @return nombres de las columnas, en orden
+     */
+    static List<String> headers() {
+        List<String> headers = new ArrayList<>();
+        headers.add(YEAR_COLUMN);
+        headers.add(DEGREE_COLUMN);
+        for (int q = 1; q <= QUESTIONS; q++) {
+            headers.add(question(q));
+        }
+        return headers;
+    }
+
+    /**
+     * @param q número de pregunta, desde 1
+     * @return nombre de la columna de la pregunta
+     */
+    static String question(int q) {
+        return "P" + q;
+    }
+
+    /**
+     * @param row fila de datos, desde 0
+     * @return titulación (valor del atributo) de la fila; cada fila tiene la suya
+     */
+    static String degree(int row) {
+        return String.format("T%07d", row);
+    }
+
+    /**
+     * Genera una encuesta CSV separada por ';', como las que lee {@link FilePreviewService#readCSV}.
+     * @param rows filas de datos
+     * @return archivo subido
+     */
+    static MockMultipartFile csv(int rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows * 40);
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(String.join(";", headers()));
+            writer.write('\n');
+            for (int r = 0; r < rows; r++) {
+                writer.write(YEARS[r % YEARS.length]);
+                writer.write(';');
+                writer.write(degree(r));
+                for (int q = 1; q <= QUESTIONS; q++) {
+                    writer.write(';');
+                    writer.write(answer(random, q));
+                }
+                writer.write('\n');
+            }
+        }
+        return new MockMultipartFile("file", "encuesta.csv", "text/csv", out.toByteArray());
+    }
+
+    /**
+     * Genera una encuesta Excel (.xlsx) de una hoja. Se escribe en streaming, así que no hace falta tener
+     * el libro completo en memoria ni siquiera con un millón de filas.
+     * @param rows filas de datos
+     * @return archivo subido
+     */
+    static MockMultipartFile xlsx(int rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows * 20);
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(100)) {
+            Sheet sheet = wb.createSheet("Encuesta");
+            writeInstructions(sheet);
+            Row header = sheet.createRow(INSTRUCTION_ROWS);
+            List<String> headers = headers();
+            for (int c = 0; c < headers.size(); c++) {
+                header.createCell(c).setCellValue(headers.get(c));
+            }
+            for (int r = 0; r < rows; r++) {
+                Row row = sheet.createRow(INSTRUCTION_ROWS + 1 + r);
+                row.createCell(0).setCellValue(YEARS[r % YEARS.length]);
+                row.createCell(1).setCellValue(degree(r));
+                for (int q = 1; q <= QUESTIONS; q++) {
+                    row.createCell(1 + q).setCellValue(Double.parseDouble(answer(random, q)));
+                }
+            }
+            wb.write(out);
+        }
+        return new MockMultipartFile("file", "encuesta.xlsx",
+                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", out.toByteArray());
+    }
+
+    /**
+     * Escribe en una hoja las filas de instrucciones que preceden a la tabla.
+     */
+    static void writeInstructions(Sheet sheet) {
+        sheet.createRow(0).createCell(0).setCellValue("Encuesta de satisfacción de la titulación");
+        sheet.createRow(1).createCell(0).setCellValue("Valore cada pregunta de 1 a 5");
+    }
+
+    /**
+     * Las preguntas impares son valoraciones enteras (1-5) y las pares, medias con dos decimales.
+     */
+    private static String answer(SplittableRandom random, int q) {
+        if (q % 2 == 1) return Integer.toString(1 + random.nextInt(5));
+        return Double.toString((100 + random.nextInt(400)) / 100.0);
+    }
+
+    /**
+     * @return proveedor sin registro de métricas: cada servicio mide en un registro propio en memoria
+     */
+    static ObjectProvider<MeterRegistry> noMetrics() {
+        return new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+    }
+
+    /**
+     * @return mapeo de las columnas de preguntas a indicadores con el mismo nombre
+     */
+    static Map<String, String> columnMapping(int questions) {
+        Map<String, String> mapping = new LinkedHashMap<>();
+        for (int q = 1; q <= questions; q++) {
+            mapping.put(question(q), "Indicador " + q);
+        }
+        return mapping;
+    }
+}
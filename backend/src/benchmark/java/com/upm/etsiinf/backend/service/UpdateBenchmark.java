@@ -0,0 +1,137 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.UpdateResult;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actualización de indicadores con {@link DatabaseService#updateIndicatorInstance} contra H2 en modo MySQL,
+ * que hace de bbdd de todos los años académicos.
+ * <p>
+ * Cada fila de la encuesta actualiza, por cada pregunta mapeada, el indicator_instance de su titulación
+ * (atributo), que existe en la bbdd. H2 no admite {@code UPDATE ... JOIN}, así que se mide el camino por lotes
+ * ('app.update.staging-threshold' = 0); la tabla temporal solo se puede medir contra MySQL.
+ * El tamaño máximo es 100.000 filas: un millón supondría millones de indicator_instance en memoria.
+ * Las cifras sirven para comparar commits entre sí, no como estimación del tiempo contra MySQL.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class UpdateBenchmark {
+
+    private static final int QUESTIONS = 4;
+    private static final String PROCESS_ID = "1";
+    private static final String ATTRIBUTE_ID = "1";
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private HikariDataSource dataSource;
+    private DBManagerService gestor;
+    private DatabaseService databaseService;
+    private final Map<String, String> columnMapping = SurveyGenerator.columnMapping(QUESTIONS);
+    private List<Map<String, Object>> data;
+    private final Date date = Date.valueOf("2024-06-01");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(config);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        createSchema(jdbc);
+
+        gestor = new SingleDatabaseManager(jdbc);
+        databaseService = new DatabaseService(jdbc, gestor, new CodingCacheService(SurveyGenerator.noMetrics(), 300, 10000),
+                SurveyGenerator.noMetrics(), 1000, 4, 0, true, 1000, 3, 100, 300);
+
+        FilePreviewService previewService = new FilePreviewService(SurveyGenerator.noMetrics(), 200, 1000, 200, 1);
+        data = new FileProcessingService(SurveyGenerator.noMetrics()).dataFilter(
+                previewService.previsualizeCSV(SurveyGenerator.csv(rows)), columnMapping, SurveyGenerator.YEAR_COLUMN);
+        previewService.shutdown();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseService.shutdown();
+        gestor.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public List<UpdateResult> updateIndicatorInstance() {
+        return databaseService.updateIndicatorInstance(PROCESS_ID, columnMapping, data, date,
+                ATTRIBUTE_ID, SurveyGenerator.DEGREE_COLUMN, SurveyGenerator.YEAR_COLUMN);
+    }
+
+    /**
+     * Crea las tablas que usa la actualización, con solo las columnas que se consultan, y un indicator_instance
+     * por titulación y pregunta.
+     */
+    private void createSchema(JdbcTemplate jdbc) {
+        jdbc.execute("DROP ALL OBJECTS");
+        jdbc.execute("CREATE TABLE process (id INT PRIMARY KEY, coding VARCHAR(50) NOT NULL UNIQUE, process_name VARCHAR(255))");
+        jdbc.execute("CREATE TABLE attribute (id INT PRIMARY KEY, coding VARCHAR(255) NOT NULL UNIQUE, description TEXT, position INT)");
+        jdbc.execute("CREATE TABLE indicator (id INT PRIMARY KEY, coding VARCHAR(255) NOT NULL UNIQUE, indicator_name VARCHAR(255) NOT NULL)");
+        jdbc.execute("CREATE TABLE indicator_instance (id INT AUTO_INCREMENT PRIMARY KEY, coding VARCHAR(255) NOT NULL UNIQUE, "
+                + "indicator_name VARCHAR(255) NOT NULL, modified_date DATE, field TEXT, valid BOOLEAN NOT NULL)");
+        jdbc.execute("CREATE INDEX indicator_instance_name ON indicator_instance (indicator_name, coding)");
+
+        jdbc.update("INSERT INTO process VALUES (1, 'PROC-001', 'Proceso de encuestas')");
+        jdbc.update("INSERT INTO attribute VALUES (1, 'TIT', 'Titulación', 1)");
+        List<Object[]> instances = new ArrayList<>();
+        for (int q = 1; q <= QUESTIONS; q++) {
+            String name = columnMapping.get(SurveyGenerator.question(q));
+            String coding = String.format("IND-%03d", q);
+            jdbc.update("INSERT INTO indicator VALUES (?, ?, ?)", q, coding, name);
+            for (int r = 0; r < rows; r++) {
+                instances.add(new Object[]{"PROC-001-" + coding + "[" + SurveyGenerator.degree(r) + "]", name});
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO indicator_instance (coding, indicator_name, field, valid) VALUES (?, ?, '', false)", instances);
+    }
+
+    /**
+     * Gestor de bbdd que devuelve la misma plantilla (H2) para todos los años académicos.
+     * Los pools de 'db-config.properties' se crean sin conexiones y no se llegan a usar.
+     */
+    private static final class SingleDatabaseManager extends DBManagerService {
+        private final JdbcTemplate jdbc;
+
+        private SingleDatabaseManager(JdbcTemplate jdbc) throws IOException {
+            super(SurveyGenerator.noMetrics(), 0, 1, 1000, 1000, 0);
+            this.jdbc = jdbc;
+        }
+
+        @Override
+        public JdbcTemplate getJdbcTemplate(String year) {
+            return jdbc;
+        }
+    }
+}
@@ -1,30 +1,57 @@
 package com.upm.etsiinf.backend.controller;
 
+import com.upm.etsiinf.backend.model.ParsedTable;
+import com.upm.etsiinf.backend.model.ReferenceData;
+import com.upm.etsiinf.backend.model.UpdateJob;
 import com.upm.etsiinf.backend.model.UpdateResult;
+import com.upm.etsiinf.backend.model.UpdateSummary;
+import com.upm.etsiinf.backend.model.UploadStatus;
 import com.upm.etsiinf.backend.service.*;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Date;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 /**
  * Controlador de la aplicación, se comunica con el frontend y con los distintos servicios del backend.
  */
-@CrossOrigin(origins = "http://localhost:3000")
+@CrossOrigin(origins = "http://localhost:3000", exposedHeaders = {Controller.TOTAL_COUNT_HEADER, RequestIdFilter.REQUEST_ID_HEADER})
 @RestController
 @RequestMapping("/file")
 public class Controller {
 
+    private static final Logger log = LoggerFactory.getLogger(Controller.class);
+
     private final FileProcessingService fileProcessingService;
     private final DatabaseService databaseService;
     private final FilePreviewService previsualizationService;
     private final FileStorageService fileStorageService;
+    private final UploadJobService uploadJobService;
+    private final UpdateJobService updateJobService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int logSampleSize;
+
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";  // número total de filas de la tabla paginada
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int STREAM_CHUNK = 500;            // resultados que se escriben como máximo antes de hacer flush
+    private static final long STREAM_WAIT_MILLIS = 1000;    // espera máxima de nuevos resultados entre flush
 
     /**
      * Constructor del controlador principal de la aplicación. Inyecta los servicios necesarios
@@ -34,15 +61,22 @@ public class Controller {
      * @param databaseService Servicio que gestiona el acceso y actualización de la base de datos.
      * @param previsualizationService Servicio que permite la previsualización de archivos (CSV/Excel).
      * @param fileStorageService Servicio que gestiona el almacenamiento de archivos.
+     * @param uploadJobService Servicio que lee en segundo plano los archivos subidos en modo asíncrono.
+     * @param updateJobService Servicio que ejecuta en segundo plano las actualizaciones de indicadores.
+     * @param logSampleSize Elementos de las listas grandes que se escriben en el log (nivel DEBUG).
      */
     @Autowired
     public Controller(FileProcessingService fileProcessingService, DatabaseService databaseService,
-                      FilePreviewService previsualizationService, FileStorageService fileStorageService) {
+                      FilePreviewService previsualizationService, FileStorageService fileStorageService,
+                      UploadJobService uploadJobService, UpdateJobService updateJobService,
+                      @Value("${app.logging.sample-size:5}") int logSampleSize) {
         this.fileProcessingService = fileProcessingService;
         this.databaseService = databaseService;
         this.previsualizationService = previsualizationService;
         this.fileStorageService = fileStorageService;
-
+        this.uploadJobService = uploadJobService;
+        this.updateJobService = updateJobService;
+        this.logSampleSize = logSampleSize;
     }
 
     /**
@@ -50,63 +84,81 @@ public class Controller {
      * <p>
      * Según el tipo de archivo, se aplica un procesamiento distinto:
      * <ul>
-     *     <li><b>CSV:</b> Se parsea y guarda como una lista de filas con pares (atributo, valor).</li>
+     *     <li><b>CSV:</b> Se parsea y guarda como una tabla por columnas; se devuelven sus primeras filas como pares (atributo, valor).</li>
      *     <li><b>Excel:</b> Se procesan todas las hojas. Solo se incluyen aquellas que contienen datos válidos.
      *         Si no hay hojas válidas, se responde con un error 400.</li>
      * </ul>
+     * <p>
+     * Con {@code async=true} el archivo no se lee durante la petición: se encola su lectura y se responde
+     * inmediatamente (202) con el {@code fileId} y el estado inicial, que después se consulta en {@code /file/{fileId}/status}.
      *
      * @param file Archivo subido por el usuario. Debe ser de tipo CSV, XLS o XLSX.
+     * @param async Si es {@code true}, el archivo se lee en segundo plano.
+     * @param limit Filas de la previsualización (por defecto 'app.preview.rows').
+     * @param columns Columnas a incluir en la previsualización (por defecto todas).
      * @return Respuesta HTTP con un mapa que puede contener:
      * <ul>
      *     <li><b>fileId:</b> ID generado para referenciar el archivo.</li>
-     *     <li><b>parsedData:</b> Datos previsualizados (solo de la primera hoja válida en Excel).</li>
+     *     <li><b>parsedData:</b> Primeras filas de los datos (solo de la primera hoja válida en Excel).</li>
+     *     <li><b>totalRows:</b> Número total de filas de la tabla previsualizada.</li>
      *     <li><b>sheetNames:</b> Lista de hojas válidas (solo en archivos Excel).</li>
      * </ul>
      * En caso de error, se devuelve un mensaje apropiado con el código HTTP correspondiente.
      */
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> handleFileUpload(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "columns", required = false) List<String> columns) {
+        if (async) {
+            return enqueueUpload(file);
+        }
         try {
             String fileId = UUID.randomUUID().toString();
             Map<String, Object> response = new HashMap<>();
             String fileName = file.getOriginalFilename();
             if (fileName != null && fileName.endsWith(".csv")) {
-                List<Map<String, String>> parsedData = previsualizationService.previsualizeCSV(file);// llamo a previsualización
-                fileStorageService.saveCSVFile(fileId, parsedData); // lo guardo para poder luego trbajar sobre el
-                response.put("parsedData", parsedData);            // devuelve lista de (nombre atributo, valor)
+                ParsedTable parsedData = previsualizationService.previsualizeCSV(file);// llamo a previsualización
+                if (!fileStorageService.saveCSVFile(fileId, parsedData)) { // lo guardo para poder luego trbajar sobre el
+                    throw new IllegalStateException("Identificador de archivo duplicado: " + fileId);
+                }
+                response.put("parsedData", previsualizationService.page(parsedData, 0, limit, columns)); // devuelve las primeras filas como lista de (nombre atributo, valor)
+                response.put("totalRows", parsedData.getRowCount());
             } else if (fileName != null && (fileName.endsWith(".xls") || fileName.endsWith(".xlsx"))) {
-                // Procesar todas las hojas del Excel
-                Map<String, List<Map<String, String>>> sheetsData = previsualizationService.previsualizeExcelAllSheets(file); // Guarda el nombre de la hoja y su previsualizacion (nombre, valor)
-                fileStorageService.saveExcelFile(fileId, sheetsData); // lo guardo para poder luego trbajar sobre el
-                // Filtro hojas válidas
-                Map<String, List<Map<String, String>>> validSheets = new LinkedHashMap<>();
-                for (Map.Entry<String, List<Map<String, String>>> entry : sheetsData.entrySet()) {
-                    if (FilePreviewService.isValidSheet(entry.getValue())) {
-                        validSheets.put(entry.getKey(), entry.getValue());
-                        System.out.println("Hoja valida: " + entry.getKey());
+                // Indexar las hojas del Excel: solo se leen sus cabeceras, las filas se leen al abrir cada hoja
+                Path tmp = previsualizationService.receive(file);
+                Map<String, Integer> validSheets;
+                try {
+                    validSheets = previsualizationService.indexExcel(tmp, null); // nombre de cada hoja válida y su fila de cabecera
+                    if (validSheets.isEmpty()) {
+                        log.info("Archivo {} sin hojas válidas", fileName);
+                        throw new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST,
+                                "No hay hojas válidas para previsualizar."
+                        );
                     }
-                }
-                if (validSheets.isEmpty()) {
-                    System.out.println("Archivo sin hojas válidas");
-                    throw new ResponseStatusException(
-                            HttpStatus.BAD_REQUEST,
-                            "No hay hojas válidas para previsualizar."
-                    );
-
-
-
+                    if (!fileStorageService.saveExcelWorkbook(fileId, tmp, validSheets)) { // lo guardo para poder luego trbajar sobre el
+                        throw new IllegalStateException("Identificador de archivo duplicado: " + fileId);
+                    }
+                } finally {
+                    Files.deleteIfExists(tmp);  // si se ha guardado, ya se ha movido
                 }
 
-                // Usar la primera hoja válida como predeterminada
+                // Usar la primera hoja válida como predeterminada; es la única que se lee ahora
                 String defaultSheet = validSheets.keySet().iterator().next();
-                response.put("parsedData", validSheets.get(defaultSheet));
+                ParsedTable sheetData = fileStorageService.getTable(fileId, defaultSheet);
+                if (sheetData == null) {
+                    throw new IllegalStateException("No se pudo leer la hoja " + defaultSheet);
+                }
+                response.put("parsedData", previsualizationService.page(sheetData, 0, limit, columns));
+                response.put("totalRows", sheetData.getRowCount());
                 response.put("sheetNames", new ArrayList<>(validSheets.keySet()));
             } else {
                 throw new IllegalArgumentException("Formato de archivo no soportado. Solo se admiten CSV y Excel.");
             }
             response.put("fileId", fileId);
-            System.out.println("Archivo guardado con exito con ID: " + fileId);
+            log.info("Archivo {} guardado con ID {}", fileName, fileId);
             return ResponseEntity.ok(response);
         } catch (ResponseStatusException e) {
             // Trato de errores esperados (como falta de hojas válidas)
@@ -114,40 +166,96 @@ public class Controller {
                     .status(e.getStatusCode())
                     .body(Map.of("error", true, "message", "No hay hojas válidas"));
         }catch (Exception e) {
-            e.printStackTrace();
+            log.error("Error al subir el archivo {}", file.getOriginalFilename(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
+    /**
+     * Encola la lectura en segundo plano de un archivo subido.
+     * @param file Archivo subido por el usuario.
+     * @return 202 con el {@code fileId} y el estado inicial; 400 si el formato no es válido;
+     *         503 si hay demasiados archivos pendientes de leer.
+     */
+    private ResponseEntity<Map<String, Object>> enqueueUpload(MultipartFile file) {
+        try {
+            UploadStatus status = uploadJobService.submit(file);
+            Map<String, Object> response = new HashMap<>();
+            response.put("fileId", status.getFileId());
+            response.put("status", status);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", true, "message", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", true, "message", "Demasiados archivos pendientes de procesar"));
+        } catch (Exception e) {
+            log.error("Error al encolar la lectura del archivo {}", file.getOriginalFilename(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
+    /**
+     * Devuelve el estado de la lectura de un archivo subido en modo asíncrono.
+     * @param fileId Identificador del archivo.
+     * @return Respuesta HTTP con el estado (filas leídas, hojas encontradas, si ha terminado y posible error),
+     *         o 404 si no hay ninguna subida asíncrona con ese ID. El estado solo lo conoce la instancia que
+     *         recibió la subida (ver {@link UploadJobService}).
+     */
+    @GetMapping("/{fileId}/status")
+    public ResponseEntity<UploadStatus> getUploadStatus(@PathVariable("fileId") String fileId) {
+        UploadStatus status = uploadJobService.getStatus(fileId);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        return ResponseEntity.ok(status);
+    }
+
     /**
      * Método recuperar los datos  de un fichero previamente almacenado.
      * El archivo puede ser de tipo CSV o Excel (XLS/XLSX).
      * <p>
-     * Si se trata de un archivo CSV, se devuelve directamente su contenido como una lista de mapas.
-     * Si es un archivo Excel, se devuelve el contenido de la primera hoja junto con los nombres de todas las hojas disponibles.
+     * Si se trata de un archivo CSV, se devuelve una página de sus filas como una lista de mapas.
+     * Si es un archivo Excel, se devuelve una página de la primera hoja junto con los nombres de todas las hojas disponibles.
+     * Por defecto la página son las primeras filas ('app.preview.rows'); con 'offset', 'limit' y 'columns' se puede
+     * recorrer el resto del archivo sin enviarlo entero.
      * @param fileId Identificador único del archivo que se desea recuperar.
+     * @param offset Primera fila de la página.
+     * @param limit Filas de la página (como máximo 'app.preview.max-rows').
+     * @param columns Columnas a incluir (por defecto todas).
      * @return Respuesta HTTP con los datos del archivo:
      *         <ul>
-     *             <li>Para CSV: lista de filas con sus valores.</li>
-     *             <li>Para Excel: un mapa con la hoja por defecto ("parsedData") y los nombres de todas las hojas ("sheetNames").</li>
+     *             <li>Para CSV: lista de filas con sus valores; el total de filas va en la cabecera {@code X-Total-Count}.</li>
+     *             <li>Para Excel: un mapa con la página de la hoja por defecto ("parsedData"), su total de filas ("totalRows")
+     *             y los nombres de todas las hojas ("sheetNames").</li>
      *             <li>404 si no se encuentra ningún archivo con ese ID.</li>
      *         </ul>
      */
     @GetMapping("/{fileId}")
-    public ResponseEntity<?> getFileData(@PathVariable("fileId") String fileId) {
+    public ResponseEntity<?> getFileData(@PathVariable("fileId") String fileId,
+                                         @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "columns", required = false) List<String> columns) {
         // Intentamos obtener el archivo desde el almacenamiento de CSV con id 'fileId'
-        List<Map<String, String>> fileData = fileStorageService.getCSVFile(fileId);
+        ParsedTable fileData = fileStorageService.getCSVFile(fileId);
         if (fileData != null) {
-            // Si se encontró en CSV, lo devolvemos directamente
-            return ResponseEntity.ok(fileData);
+            // Si se encontró en CSV, devolvemos la página pedida
+            return ResponseEntity.ok()
+                    .header(TOTAL_COUNT_HEADER, String.valueOf(fileData.getRowCount()))
+                    .body(previsualizationService.page(fileData, offset, limit, columns));
         } else {
             // Si no se encontró en CSV, intentamos buscarlo en Excel con id 'fileId'
-            Map<String, List<Map<String, String>>> excelData = fileStorageService.getExcelFile(fileId);
-            if (excelData != null) {
-                String defaultSheet = excelData.keySet().iterator().next(); // Establecemos la hoja por defecto (la primera)
+            List<String> sheetNames = fileStorageService.getSheetNames(fileId);
+            if (sheetNames != null && !sheetNames.isEmpty()) {
+                String defaultSheet = sheetNames.get(0); // Establecemos la hoja por defecto (la primera)
+                ParsedTable sheetData = fileStorageService.getTable(fileId, defaultSheet);  // se lee si aún no se ha abierto
+                if (sheetData == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+                }
                 Map<String, Object> response = new LinkedHashMap<>();
-                response.put("parsedData", excelData.get(defaultSheet));
-                response.put("sheetNames", new ArrayList<>(excelData.keySet()));
+                response.put("parsedData", previsualizationService.page(sheetData, offset, limit, columns));
+                response.put("totalRows", sheetData.getRowCount());
+                response.put("sheetNames", new ArrayList<>(sheetNames));
                 return ResponseEntity.ok(response);
             }
         }
@@ -155,27 +263,36 @@ public class Controller {
     }
 
     /**
-     * Recupera los datos de un archivo previamente subido para su previsualización.
+     * Recupera una página de los datos de una hoja de un archivo previamente subido.
      *
      * @param fileId Identificador único del archivo del que se desea obtener una vista previa.
      * @param sheetName Nombre de la hoja (en archivos Excel) que se desea previsualizar. Puede ser nulo si el archivo no es un Excel.
-     * @return Respuesta HTTP que contiene la tabla de datos de la hoja especificada, lista para ser mostrada en la interfaz.
+     * @param offset Primera fila de la página.
+     * @param limit Filas de la página (por defecto 'app.preview.rows', como máximo 'app.preview.max-rows').
+     * @param columns Columnas a incluir (por defecto todas).
+     * @return Respuesta HTTP que contiene las filas de la página de la hoja especificada, listas para ser mostradas en la interfaz.
+     *         El total de filas de la hoja va en la cabecera {@code X-Total-Count}.
      */
 
     @GetMapping("/{fileId}/sheet")
     public ResponseEntity<List<Map<String, String>>> getSheetData(@PathVariable("fileId") String fileId,
-                                                                  @RequestParam("nombreHoja") String sheetName) {
-        // Recupero la info de las hojas de ese fichero
-        Map<String, List<Map<String, String>>> sheetsData = fileStorageService.getExcelFile(fileId);  // Recuperas la info del fichero guardado
-        if (sheetsData == null) {
+                                                                  @RequestParam("nombreHoja") String sheetName,
+                                                                  @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                                                  @RequestParam(value = "limit", required = false) Integer limit,
+                                                                  @RequestParam(value = "columns", required = false) List<String> columns) {
+        // Recupero las hojas de ese fichero
+        List<String> sheetNames = fileStorageService.getSheetNames(fileId);  // Recuperas las hojas del fichero guardado
+        if (sheetNames == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
-        List<Map<String, String>> sheetData = sheetsData.get(sheetName);        // Recuperas info de la hoja pedida
+        ParsedTable sheetData = fileStorageService.getTable(fileId, sheetName);        // Recuperas info de la hoja pedida (se lee la primera vez)
         if (sheetData == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
-        System.out.println("Se cambió a la hoja " + sheetName);
-        return ResponseEntity.ok(sheetData);
+        log.debug("Se cambió a la hoja {} del archivo {}", sheetName, fileId);
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(sheetData.getRowCount()))
+                .body(previsualizationService.page(sheetData, offset, limit, columns));
     }
 
 
@@ -187,17 +304,20 @@ public class Controller {
      * Este método consulta la base de datos correspondiente al año por defecto y devuelve
      * una lista de procesos.
      *
+     * La respuesta lleva el ETag de la lista: si la petición trae ese ETag en {@code If-None-Match},
+     * se responde 304 sin cuerpo.
+     *
      * @return Respuesta HTTP con una lista de mapas que representan los procesos obtenidos.
      *         Si ocurre un error durante la consulta, se devuelve un error 500 (Internal Server Error).
      */
     @GetMapping("/processes") /*pasarle el atributo del año en el que estas */
     public ResponseEntity<List<Map<String, Object>>> getProcesos() {
         try {
-            List<Map<String, Object>> procesos = databaseService.getProcesses();
-            System.out.println("Se obtienen los procesos: "+ procesos);
-            return ResponseEntity.ok(procesos);
+            ReferenceData procesos = databaseService.getProcessesReference();
+            log.debug("Se obtienen los procesos: {}", LogContext.sample(procesos.getRows(), logSampleSize));
+            return referenceResponse(procesos);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Error al obtener los procesos", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
@@ -206,7 +326,7 @@ public class Controller {
      * Devuelve la lista de indicadores de un proceso especifico existentes en la bbdd por defecto
      <p>
      * Este método consulta la base de datos correspondiente al año por defecto y devuelve
-     * una lista de indicadores, asociados a un proceso.
+     * una lista de indicadores, asociados a un proceso. Responde 304 si la petición trae su ETag en {@code If-None-Match}.
      * @param processId Proceso del cual se quieren saber sus indicadores asociados.
      * @return Respuesta HTTP con una lista de mapas que representan los indicadores obtenidos.
      *   Si ocurre un error durante la consulta, se devuelve un error 500 (Internal Server Error).
@@ -214,11 +334,12 @@ public class Controller {
     @GetMapping("/processes/{processId}/indicators")
     public ResponseEntity<List<Map<String, Object>>> getIndicadoresByProcess(@PathVariable("processId") int processId) {
         try {
-            List<Map<String, Object>> indicadores = databaseService.getIndicatorsbyProcess(processId);
-            System.out.println("Se obtienen los indicadores: " + indicadores + " asociados al proceso: " + processId);
-            return ResponseEntity.ok(indicadores);
+            ReferenceData indicadores = databaseService.getIndicatorsReference(processId);
+            log.debug("Se obtienen los indicadores del proceso {}: {}", processId,
+                    LogContext.sample(indicadores.getRows(), logSampleSize));
+            return referenceResponse(indicadores);
         }catch(Exception e) {
-            e.printStackTrace();
+            log.error("Error al obtener los indicadores del proceso {}", processId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
@@ -228,21 +349,44 @@ public class Controller {
      * Devuelve la lista de atributos existentes en la bbdd por defecto.
      <p>
      * Este método consulta la base de datos correspondiente al año por defecto y devuelve
-     * una lista de atributos.
+     * una lista de atributos. Responde 304 si la petición trae su ETag en {@code If-None-Match}.
      * @return Respuesta HTTP con una lista de mapas que representan los atributos obtenidos.
      *   Si ocurre un error durante la consulta, se devuelve un error 500 (Internal Server Error).
      */
     @GetMapping("/attributes")
     public ResponseEntity<List<Map<String, Object>>> getAtributos() {
         try {
-            List<Map<String, Object>> atributos = databaseService.getAttributes();
-            return ResponseEntity.ok(atributos);
+            return referenceResponse(databaseService.getAttributesReference());
         }catch(Exception e) {
-            e.printStackTrace();
+            log.error("Error al obtener los atributos", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
+    /**
+     * Vacía la caché de procesos, indicadores y atributos, por ejemplo tras modificarlos en la bbdd.
+     * <p>
+     * La siguiente consulta de cada lista lee la bbdd; si sus datos han cambiado, también cambia su ETag.
+     *
+     * @return 204 sin cuerpo.
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> invalidateReferenceData() {
+        databaseService.invalidateReferenceData();
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Respuesta con unos datos de referencia y su ETag. Spring responde 304 sin cuerpo si coincide con el
+     * {@code If-None-Match} de la petición; con {@code no-cache} el navegador la revalida en cada uso.
+     */
+    private static ResponseEntity<List<Map<String, Object>>> referenceResponse(ReferenceData data) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(data.getEtag())
+                .body(data.getRows());
+    }
+
     /**
      * Procesa un archivo previamente subido (CSV o Excel), aplica un mapeo de columnas
      * y actualiza los valores del indicador correspondiente en la base de datos.
@@ -259,6 +403,7 @@ public class Controller {
      * @param attribute Atributo vinculados a los indicadores que se quieren actualizar.
      * @param possibleValue Valor posible del atributo.
      * @param academicYearColumn Nombre de la columna del archivo que contiene los años académicos, usada para conectarse a la base de datos que corresponda.
+     * @param allOrNothing Si es {@code true}, cada año se aplica completo o no se aplica (se revierte si falla alguna celda del año).
      * @return Una respuesta HTTP con la lista de resultados de la operación.
      *         Cada resultado (`UpdateResult`) indica si la actualización fue exitosa, cuántas filas fueron afectadas y posibles mensajes de error.
      *         En caso de error global, se devuelve un único `UpdateResult` con el mensaje correspondiente.
@@ -272,52 +417,25 @@ public class Controller {
             @RequestParam("date") Date date,
             @RequestParam("attribute") String attribute,
             @RequestParam("possibleValue") String possibleValue,
-            @RequestParam("academicYearColumn") String academicYearColumn)
+            @RequestParam("academicYearColumn") String academicYearColumn,
+            @RequestParam(value = "allOrNothing", defaultValue = "false") boolean allOrNothing)
 
     {
 
         try {
-            System.out.println("SOLICITUD RECIBIDA-> ");
-            System.out.println(" - FileId recibido: " + fileId);
-            System.out.println(" - Nombre de la hoja: " + nombreHoja);
-            System.out.println(" - JSON recibido (mapeoColumnas): " + mapeoColumnasJson);
-            System.out.println(" - Proceso: " + processId);
-            System.out.println(" - Fecha: " + date);
-            System.out.println(" - Atributo: " + attribute);
-            System.out.println(" - PosibleValor: " + possibleValue);
-            System.out.println(" - Columna año académico: " + academicYearColumn);
+            log.info("Actualización de indicadores: archivo {}, hoja {}, proceso {}, fecha {}", fileId, nombreHoja, processId, date);
+            log.debug("Atributo {}, columna del valor {}, columna del año académico {}, mapeo de columnas {}",
+                    attribute, possibleValue, academicYearColumn, mapeoColumnasJson);
 
             // Convertir el JSON recibido a un Map.
-            ObjectMapper objectMapper = new ObjectMapper();
             Map<String, String> mapeoColumnas = objectMapper.readValue(mapeoColumnasJson, new TypeReference<Map<String, String>>() {});
-            List<Map<String, Object>> resultado = null;
-
-            // Intentar recuperar datos preprocesados (CSV).
-            List<Map<String, String>> csvData = fileStorageService.getCSVFile(fileId);
-            if (csvData != null) {
-                resultado = fileProcessingService.dataFilter(csvData, mapeoColumnas,academicYearColumn);
-            } else {
-                // Si no es CSV, probar con Excel.
-                Map<String, List<Map<String, String>>> excelData = fileStorageService.getExcelFile(fileId);
-                if (excelData != null) {
-                    // Si no se especificó la hoja, usar la primera posible.
-                    if (nombreHoja == null || nombreHoja.trim().isEmpty()) {
-                        nombreHoja = excelData.keySet().iterator().next();
-                    }
-                    List<Map<String, String>> sheetData = excelData.get(nombreHoja);
-                    resultado = fileProcessingService.dataFilter(sheetData, mapeoColumnas,academicYearColumn);
-                }
-            }
-
-            if (resultado == null) {
-                throw new IllegalArgumentException("No se pudieron recuperar datos para el fileId: " + fileId);
-            }
+            List<Map<String, Object>> resultado = filteredData(fileId, nombreHoja, mapeoColumnas, academicYearColumn);
             // Actualizar indicator_instance usando el mapeo y los datos filtrados.
-           List<UpdateResult> res= databaseService.updateIndicatorInstance(processId, mapeoColumnas, resultado, date, attribute, possibleValue, academicYearColumn);
-            System.out.println("Datos subidos con éxito ");
+           List<UpdateResult> res= databaseService.updateIndicatorInstance(processId, mapeoColumnas, resultado, date, attribute, possibleValue, academicYearColumn, allOrNothing);
+            log.info("Actualización del archivo {} terminada: {} resultados", fileId, res.size());
             return ResponseEntity.ok(res);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Error al actualizar los indicadores con el archivo {}", fileId, e);
             // Construimos un UpdateResult de error genérico
           UpdateResult errorResult = new UpdateResult(
                     /* year */        null,
@@ -333,7 +451,150 @@ public class Controller {
         }
     }
 
+    /**
+     * Igual que {@code /file/updateInd}, pero la actualización se ejecuta en segundo plano.
+     * <p>
+     * Responde inmediatamente (202) con el {@code jobId}; los resultados se leen a medida que se generan en
+     * {@code /file/updateInd/jobs/{jobId}/results} (NDJSON) y el recuento por año e indicador en
+     * {@code /file/updateInd/jobs/{jobId}/summary}.
+     *
+     * @param fileId ID del archivo previamente subido al sistema.
+     * @param nombreHoja Nombre de la hoja a procesar (solo se aplica si el archivo es Excel).
+     * @param mapeoColumnasJson Mapeo de columnas en formato JSON.
+     * @param processId ID del proceso relacionado con los indicadores que se quieren actualizar.
+     * @param date Fecha de referencia para registrar la carga en la base de datos.
+     * @param attribute Atributo vinculados a los indicadores que se quieren actualizar.
+     * @param possibleValue Valor posible del atributo.
+     * @param academicYearColumn Nombre de la columna del archivo que contiene los años académicos.
+     * @param allOrNothing Si es {@code true}, cada año se aplica completo o no se aplica.
+     * @return 202 con el {@code jobId} y el resumen inicial; 400 si los datos no son válidos;
+     *         503 si hay demasiadas actualizaciones pendientes.
+     */
+    @PostMapping("/updateInd/jobs")
+    public ResponseEntity<Map<String, Object>> submitUpdateJob(
+            @RequestParam("fileId") String fileId,
+            @RequestParam(value = "nombreHoja", required = false) String nombreHoja,
+            @RequestParam("mapeoColumnas") String mapeoColumnasJson,
+            @RequestParam("process") String processId,
+            @RequestParam("date") Date date,
+            @RequestParam("attribute") String attribute,
+            @RequestParam("possibleValue") String possibleValue,
+            @RequestParam("academicYearColumn") String academicYearColumn,
+            @RequestParam(value = "allOrNothing", defaultValue = "false") boolean allOrNothing) {
+        try {
+            Map<String, String> mapeoColumnas = objectMapper.readValue(mapeoColumnasJson, new TypeReference<Map<String, String>>() {});
+            List<Map<String, Object>> datos = filteredData(fileId, nombreHoja, mapeoColumnas, academicYearColumn);
+            UpdateJob job = updateJobService.submit(processId, mapeoColumnas, datos, date, attribute, possibleValue, academicYearColumn, allOrNothing);
+            Map<String, Object> response = new HashMap<>();
+            response.put("jobId", job.getJobId());
+            response.put("summary", job.getSummary());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", true, "message", "Demasiadas actualizaciones pendientes"));
+        } catch (Exception e) {
+            log.warn("No se pudo encolar la actualización con el archivo {}", fileId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", true, "message", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Devuelve los resultados de un trabajo de actualización en formato NDJSON (un {@code UpdateResult} por línea).
+     * <p>
+     * La respuesta se va escribiendo a medida que terminan los lotes y se cierra al acabar el trabajo.
+     * Con 'from' se puede retomar la lectura tras una desconexión, saltando los resultados ya recibidos; solo se
+     * conservan los últimos 'app.update.jobs.replay-limit' resultados. Si 'from' (o un lector lento) se queda por detrás
+     * del más antiguo que se conserva, antes de continuar se escribe una línea {@code {"skipped":{"from":a,"to":b}}}:
+     * los resultados de 'a' a 'b' (sin incluir) se han descartado y la siguiente línea es el resultado 'b', de modo
+     * que quien cuenta líneas para retomar con 'from' debe continuar la cuenta en 'b'. Los recuentos completos
+     * están en el resumen.
+     * @param jobId Identificador del trabajo.
+     * @param from Número de resultados ya leídos que se omiten.
+     * @return Respuesta HTTP con los resultados en streaming, o 404 si no existe el trabajo.
+     */
+    @GetMapping(value = "/updateInd/jobs/{jobId}/results", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUpdateResults(@PathVariable("jobId") String jobId,
+                                                                     @RequestParam(value = "from", defaultValue = "0") int from) {
+        UpdateJob job = updateJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        StreamingResponseBody body = out -> {
+            try {
+                writeResults(job, from, out, objectMapper, STREAM_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
 
-}
+    /**
+     * Escribe en NDJSON los resultados de un trabajo desde la posición 'from' hasta que termina
+     * (ver {@link #streamUpdateResults} para el formato).
+     * @param job trabajo de actualización
+     * @param from posición del primer resultado que se escribe
+     * @param out destino
+     * @param objectMapper conversor a JSON
+     * @param waitMillis espera máxima de nuevos resultados entre flush
+     * @throws IOException si falla la escritura
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    static void writeResults(UpdateJob job, int from, OutputStream out, ObjectMapper objectMapper, long waitMillis)
+            throws IOException, InterruptedException {
+        int next = Math.max(0, from);
+        while (true) {
+            boolean completed = job.isCompleted();  // antes de leer, para no perder los últimos resultados
+            UpdateJob.ResultChunk chunk = job.awaitResults(next, STREAM_CHUNK, waitMillis);
+            if (chunk.getFrom() > next) {
+                log.debug("Trabajo {}: descartados {} resultados antes de enviarlos", job.getJobId(), chunk.getFrom() - next);
+                Map<String, Integer> skipped = new LinkedHashMap<>();
+                skipped.put("from", next);
+                skipped.put("to", chunk.getFrom());
+                out.write(objectMapper.writeValueAsBytes(Map.of("skipped", skipped)));
+                out.write('\n');
+            }
+            for (UpdateResult result : chunk.getResults()) {
+                out.write(objectMapper.writeValueAsBytes(result));
+                out.write('\n');
+            }
+            next = chunk.getFrom() + chunk.getResults().size();
+            out.flush();
+            if (completed && chunk.getResults().isEmpty()) break;
+        }
+    }
 
+    /**
+     * Devuelve el estado de un trabajo de actualización y el número de celdas actualizadas y fallidas,
+     * en total, por año académico y por indicador.
+     * @param jobId Identificador del trabajo.
+     * @return Respuesta HTTP con el resumen, o 404 si no existe el trabajo.
+     */
+    @GetMapping("/updateInd/jobs/{jobId}/summary")
+    public ResponseEntity<UpdateSummary> getUpdateSummary(@PathVariable("jobId") String jobId) {
+        UpdateJob job = updateJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        return ResponseEntity.ok(job.getSummary());
+    }
 
+    /**
+     * Recupera la tabla de un archivo subido (o de una de sus hojas) y la filtra según el mapeo de columnas.
+     * @param fileId ID del archivo previamente subido al sistema.
+     * @param nombreHoja Nombre de la hoja (si no se indica, la primera).
+     * @param mapeoColumnas Mapeo de columnas del archivo a indicadores.
+     * @param academicYearColumn Columna del archivo con los años académicos.
+     * @return filas filtradas
+     * @throws IllegalArgumentException si no existe el archivo o la hoja
+     */
+    private List<Map<String, Object>> filteredData(String fileId, String nombreHoja, Map<String, String> mapeoColumnas,
+                                                   String academicYearColumn) {
+        // Tabla del CSV, o de la hoja pedida del Excel (si no se especificó la hoja, la primera)
+        ParsedTable table = fileStorageService.getTable(fileId, nombreHoja);
+        if (table == null) {
+            throw new IllegalArgumentException("No se pudieron recuperar datos para el fileId: " + fileId);
+        }
+        return fileProcessingService.dataFilter(table, mapeoColumnas, academicYearColumn);
+    }
+}
@@ -0,0 +1,54 @@
+package com.upm.etsiinf.backend.controller;
+
+import com.upm.etsiinf.backend.service.LogContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Filtro que asigna un identificador a cada petición y lo guarda en el MDC ({@link LogContext#REQUEST_ID}),
+ * de modo que todas las líneas de log de una misma petición se pueden agrupar.
+ * <p>
+ * Si la petición trae la cabecera {@code X-Request-Id} con un valor válido se reutiliza (por ejemplo, el que
+ * asigna un proxy); si no, se genera uno. En ambos casos se devuelve en la misma cabecera de la respuesta.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    static final String REQUEST_ID_HEADER = "X-Request-Id";
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    /**
+     * Constructor por defecto. No realiza ninguna operación.
+     */
+    public RequestIdFilter() {
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !VALID_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+        MDC.put(LogContext.REQUEST_ID, requestId);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(LogContext.REQUEST_ID);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.upm.etsiinf.backend.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columna de una {@link ParsedTable} guardada con tipos primitivos.
+ * <p>
+ * Mientras todos los valores de la columna sean números enteros se guardan en un {@code long[]}; si aparece un decimal,
+ * en un {@code double[]}; y si aparece un texto, la columna pasa a codificarse con diccionario: cada valor distinto
+ * se guarda una vez y cada celda guarda solo su código ({@code int[]}). Las celdas vacías se marcan en un {@link BitSet}.
+ * </p>
+ * <p>
+ * Un número solo se guarda como tal si al volver a escribirlo se obtiene exactamente el mismo texto
+ * (por ejemplo "3" o "4.5", pero no "03", "1.50" ni "1e5"), de modo que {@link #get} siempre devuelve el valor leído del archivo.
+ * </p>
+ */
+final class CompactColumn implements TableColumn {
+
+    private static final long MAX_EXACT = 1L << 53;  // enteros que un double representa sin pérdida
+
+    private enum Type { LONG, DOUBLE, TEXT }
+
+    private Type type = Type.LONG;
+    private long[] longs;
+    private double[] doubles;
+    private int[] codes;
+    private List<String> dictionary;
+    private Map<String, Integer> codeOf;  // código de cada valor del diccionario; se libera al terminar la lectura
+    private final BitSet blanks = new BitSet();
+    private int capacity;
+
+    /**
+     * Crea una columna vacía.
+     * @param capacity filas que caben sin volver a reservar memoria
+     */
+    CompactColumn(int capacity) {
+        this.capacity = capacity;
+        this.longs = new long[capacity];
+    }
+
+    /**
+     * Guarda el valor de una fila. Las filas se escriben en orden: todas las anteriores a 'row' ya tienen valor.
+     * @param row fila (menor que la capacidad)
+     * @param value valor de la celda; {@code null} o vacío es una celda vacía
+     */
+    void set(int row, String value) {
+        if (value == null || value.isEmpty()) {
+            blanks.set(row);
+            return;
+        }
+        blanks.clear(row);
+        if (type == Type.LONG) {
+            if (isExactLong(value)) {
+                longs[row] = Long.parseLong(value);
+                return;
+            }
+            if (isExactDouble(value)) {
+                toDouble(row);
+            } else {
+                toText(row);
+            }
+        }
+        if (type == Type.DOUBLE) {
+            if (isExactDouble(value)) {
+                doubles[row] = Double.parseDouble(value);
+                return;
+            }
+            toText(row);
+        }
+        codes[row] = code(value);
+    }
+
+    /**
+     * Devuelve el valor de una fila tal y como se leyó del archivo.
+     * @param row fila
+     * @return valor de la celda ("" si está vacía)
+     */
+    @Override
+    public String get(int row) {
+        if (blanks.get(row)) return "";
+        switch (type) {
+            case LONG:
+                return Long.toString(longs[row]);
+            case DOUBLE:
+                return format(doubles[row]);
+            default:
+                return dictionary.get(codes[row]);
+        }
+    }
+
+    /**
+     * Cambia la capacidad de la columna, por ejemplo para liberar la sobrante al terminar la lectura.
+     * Al ajustarla al número de filas también se libera el índice del diccionario, que solo hace falta al añadir filas.
+     * @param capacity nueva capacidad
+     * @param rowCount filas escritas
+     */
+    void resize(int capacity, int rowCount) {
+        this.capacity = capacity;
+        switch (type) {
+            case LONG:
+                longs = Arrays.copyOf(longs, capacity);
+                break;
+            case DOUBLE:
+                doubles = Arrays.copyOf(doubles, capacity);
+                break;
+            default:
+                codes = Arrays.copyOf(codes, capacity);
+                if (capacity == rowCount) {
+                    codeOf = null;
+                    ((ArrayList<String>) dictionary).trimToSize();
+                }
+        }
+    }
+
+    /**
+     * Estima la memoria que ocupa la columna.
+     * @return tamaño aproximado en bytes
+     */
+    @Override
+    public long estimateSize() {
+        long bytes = 48 + blanks.size() / 8;
+        switch (type) {
+            case LONG:
+            case DOUBLE:
+                return bytes + 16 + 8L * capacity;
+            default:
+                bytes += 16 + 4L * capacity;
+                for (String value : dictionary) {
+                    bytes += 48 + value.length();
+                }
+                return bytes + (codeOf == null ? 0 : 48L * dictionary.size());
+        }
+    }
+
+    private int code(String value) {
+        if (codeOf == null) {
+            codeOf = new HashMap<>();
+            for (int i = 0; i < dictionary.size(); i++) {
+                codeOf.put(dictionary.get(i), i);
+            }
+        }
+        Integer code = codeOf.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codeOf.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Pasa la columna de enteros a decimales; las filas [0, rowCount) ya escritas se convierten sin pérdida.
+     */
+    private void toDouble(int rowCount) {
+        doubles = new double[capacity];
+        for (int r = 0; r < rowCount; r++) {
+            doubles[r] = longs[r];
+        }
+        longs = null;
+        type = Type.DOUBLE;
+    }
+
+    /**
+     * Pasa la columna a texto con diccionario, recodificando las filas [0, rowCount) ya escritas.
+     */
+    private void toText(int rowCount) {
+        int[] newCodes = new int[capacity];
+        dictionary = new ArrayList<>();
+        for (int r = 0; r < rowCount; r++) {
+            if (!blanks.get(r)) newCodes[r] = code(get(r));
+        }
+        codes = newCodes;
+        longs = null;
+        doubles = null;
+        type = Type.TEXT;
+    }
+
+    /**
+     * Indica si el texto es un entero escrito en forma canónica (sin ceros a la izquierda ni signo +)
+     * que un double también representa sin pérdida.
+     */
+    private static boolean isExactLong(String value) {
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        int length = value.length() - start;
+        if (length == 0 || length > 16) return false;
+        if (value.charAt(start) == '0' && (length > 1 || start == 1)) return false;  // "01" o "-0"
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return Math.abs(Long.parseLong(value)) <= MAX_EXACT;
+    }
+
+    /**
+     * Indica si el texto es un decimal que se vuelve a escribir exactamente igual con {@link #format}.
+     */
+    private static boolean isExactDouble(String value) {
+        if (value.length() > 24) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != '-') return false;  // descarta "NaN", "1e5", "2d"...
+        }
+        try {
+            return format(Double.parseDouble(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,100 @@
+package com.upm.etsiinf.backend.model;
+
+import java.util.Locale;
+
+/**
+ * Resultado de la detección de la fila de cabecera de una hoja.
+ * <p>
+ * Indica qué fila se eligió como cabecera, con qué confianza y cuántas filas se examinaron para decidirlo.
+ * La confianza va de 0 (no se encontró cabecera) a 1 (cabecera solo con textos seguida de una fila solo con números).
+ * Esta clase proporciona métodos getters estándar.
+ * </p>
+ */
+public class HeaderDetection {
+
+    private final int rowIndex;
+    private final double confidence;
+    private final int textCells;
+    private final int numericCells;
+    private final int rowsScanned;
+
+    /**
+     * Crea el resultado de una detección.
+     * @param rowIndex fila de la cabecera, o -1 si no se encontró
+     * @param confidence confianza en la decisión, entre 0 y 1
+     * @param textCells celdas de texto de la fila de cabecera
+     * @param numericCells celdas numéricas de la fila de cabecera
+     * @param rowsScanned filas examinadas
+     */
+    public HeaderDetection(int rowIndex, double confidence, int textCells, int numericCells, int rowsScanned) {
+        this.rowIndex = rowIndex;
+        this.confidence = confidence;
+        this.textCells = textCells;
+        this.numericCells = numericCells;
+        this.rowsScanned = rowsScanned;
+    }
+
+    /**
+     * Resultado cuando ninguna fila de la ventana examinada parece una cabecera.
+     * @param rowsScanned filas examinadas
+     * @return detección sin cabecera
+     */
+    public static HeaderDetection notFound(int rowsScanned) {
+        return new HeaderDetection(-1, 0, 0, 0, rowsScanned);
+    }
+
+    /**
+     * Indica si se encontró cabecera
+     * @return {@code true} si hay fila de cabecera
+     */
+    public boolean isFound() {
+        return rowIndex >= 0;
+    }
+
+    /**
+     * Devuelve el índice de la fila de cabecera
+     * @return fila de la cabecera, o -1 si no se encontró
+     */
+    public int getRowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * Devuelve la confianza en la decisión
+     * @return valor entre 0 y 1
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Devuelve el número de celdas de texto de la fila de cabecera
+     * @return celdas de texto
+     */
+    public int getTextCells() {
+        return textCells;
+    }
+
+    /**
+     * Devuelve el número de celdas numéricas de la fila de cabecera
+     * @return celdas numéricas
+     */
+    public int getNumericCells() {
+        return numericCells;
+    }
+
+    /**
+     * Devuelve el número de filas examinadas
+     * @return filas examinadas
+     */
+    public int getRowsScanned() {
+        return rowsScanned;
+    }
+
+    @Override
+    public String toString() {
+        return isFound()
+                ? "fila " + rowIndex + " (confianza " + String.format(Locale.ROOT, "%.2f", confidence) + ")"
+                : "no encontrada en " + rowsScanned + " filas";
+    }
+}
@@ -0,0 +1,444 @@
+package com.upm.etsiinf.backend.model;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Tabla con los datos leídos de un archivo subido, almacenada por columnas.
+ * <p>
+ * Los nombres de columna se guardan una sola vez (internados) y los valores de cada columna en arrays primitivos
+ * ({@link CompactColumn}: enteros, decimales o códigos de un diccionario de textos, con las celdas vacías en un bitset),
+ * en lugar de repetir en cada fila un mapa (nombre de columna → valor de celda) con una cadena por celda.
+ * Las filas se pueden recorrer como mapas de solo lectura que leen directamente de las columnas, sin copiarlas.
+ * </p>
+ * <p>
+ * Una tabla ya guardada se puede reabrir como tabla de solo lectura ({@link #readOnly}) con columnas que leen
+ * sus valores de otro sitio ({@link TableColumn}), por ejemplo de un archivo proyectado en memoria.
+ * </p>
+ */
+public class ParsedTable implements Iterable<Map<String, String>> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<String> headers;                     // nombres de columna tal y como aparecen en el archivo
+    private final List<String> columnNames;                 // nombres distintos, en orden de aparición
+    private final Map<String, Integer> columnIndex = new HashMap<>();  // nombre → posición de la columna en el archivo
+    private final int width;                                // número de columnas del archivo (con repetidas)
+    private final TableColumn[] columns;
+    private final boolean readOnly;                         // columnas que no son CompactColumn: no se pueden añadir filas
+    private int capacity = INITIAL_CAPACITY;
+    private int rowCount;
+
+    /**
+     * Crea una tabla vacía con las columnas indicadas.
+     * <p> Si un nombre de columna se repite, prevalece el valor de la última columna con ese nombre,
+     * igual que al guardar la fila en un mapa.
+     * @param headers nombres de columna, en el orden del archivo
+     */
+    public ParsedTable(List<String> headers) {
+        this(headers, emptyColumns(headers.size()), 0, false);
+    }
+
+    private ParsedTable(List<String> headers, TableColumn[] columns, int rowCount, boolean readOnly) {
+        this.width = headers.size();
+        List<String> interned = new ArrayList<>(width);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            String name = headers.get(i).intern();
+            interned.add(name);
+            if (columnIndex.put(name, i) == null) {
+                names.add(name);
+            }
+        }
+        this.headers = Collections.unmodifiableList(interned);
+        this.columnNames = Collections.unmodifiableList(names);
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.readOnly = readOnly;
+        if (readOnly) this.capacity = rowCount;
+    }
+
+    private static TableColumn[] emptyColumns(int width) {
+        TableColumn[] columns = new TableColumn[width];
+        for (int c = 0; c < width; c++) {
+            columns[c] = new CompactColumn(INITIAL_CAPACITY);
+        }
+        return columns;
+    }
+
+    /**
+     * Crea una tabla de solo lectura sobre columnas ya guardadas, sin copiar sus valores.
+     * @param headers nombres de columna, en el orden del archivo
+     * @param columns valores de cada columna, en el mismo orden
+     * @param rowCount número de filas
+     * @return tabla con esos datos; {@link #addRow} lanza {@link UnsupportedOperationException}
+     */
+    public static ParsedTable readOnly(List<String> headers, List<? extends TableColumn> columns, int rowCount) {
+        if (columns.size() != headers.size()) throw new IllegalArgumentException("Número de columnas incorrecto");
+        return new ParsedTable(headers, columns.toArray(new TableColumn[0]), rowCount, true);
+    }
+
+    /**
+     * Crea una tabla a partir de columnas ya leídas, por ejemplo desde disco, codificándolas columna a columna.
+     * @param headers nombres de columna, en el orden del archivo
+     * @param columns valores de cada columna (columns[columna][fila])
+     * @param rowCount número de filas
+     * @return tabla con esos datos
+     */
+    public static ParsedTable fromColumns(List<String> headers, String[][] columns, int rowCount) {
+        if (columns.length != headers.size()) throw new IllegalArgumentException("Número de columnas incorrecto");
+        ParsedTable table = new ParsedTable(headers);
+        table.capacity = rowCount;
+        for (int c = 0; c < table.width; c++) {
+            CompactColumn column = new CompactColumn(rowCount);
+            for (int r = 0; r < rowCount; r++) {
+                column.set(r, columns[c][r]);
+            }
+            column.resize(rowCount, rowCount);
+            table.columns[c] = column;
+        }
+        table.rowCount = rowCount;
+        return table;
+    }
+
+    /**
+     * Añade una fila al final de la tabla. Las celdas que falten se guardan como cadena vacía.
+     * @param values valores de la fila, en el orden de las columnas
+     */
+    public void addRow(String[] values) {
+        if (readOnly) throw new UnsupportedOperationException("Tabla de solo lectura");
+        if (rowCount == capacity) {
+            capacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+            for (int c = 0; c < width; c++) {
+                ((CompactColumn) columns[c]).resize(capacity, rowCount);
+            }
+        }
+        for (int c = 0; c < width; c++) {
+            ((CompactColumn) columns[c]).set(rowCount, c < values.length ? values[c] : null);
+        }
+        rowCount++;
+    }
+
+    /**
+     * Libera la capacidad sobrante de las columnas una vez terminada la lectura.
+     */
+    public void trimToSize() {
+        if (readOnly) return;
+        capacity = rowCount;
+        for (int c = 0; c < width; c++) {
+            ((CompactColumn) columns[c]).resize(rowCount, rowCount);
+        }
+    }
+
+    /**
+     * Devuelve los nombres de columna tal y como aparecen en el archivo (puede haber repetidos).
+     * @return nombres de columna por posición
+     */
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Devuelve el número de columnas del archivo, contando las de nombre repetido.
+     * @return número de columnas
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Estima la memoria que ocupa la tabla, para poder limitar el almacenamiento de archivos subidos.
+     * @return tamaño aproximado en bytes
+     */
+    public long estimateSize() {
+        long bytes = 64;
+        for (int c = 0; c < width; c++) {
+            bytes += columns[c].estimateSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Devuelve los nombres de columna de la tabla, sin repetidos y en el orden del archivo.
+     * @return nombres de columna
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Devuelve el número de filas de datos de la tabla.
+     * @return número de filas
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Indica si la tabla no tiene filas de datos.
+     * @return {@code true} si no hay filas
+     */
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * Devuelve la posición de una columna a partir de su nombre.
+     * @param columnName nombre de la columna
+     * @return posición de la columna, o -1 si no existe
+     */
+    public int getColumnIndex(String columnName) {
+        Integer index = columnIndex.get(columnName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Devuelve el valor de una celda.
+     * @param row fila
+     * @param column posición de la columna
+     * @return valor de la celda
+     */
+    public String getValue(int row, int column) {
+        if (row < 0 || row >= rowCount) throw new IndexOutOfBoundsException("Fila " + row + " de " + rowCount);
+        return columns[column].get(row);
+    }
+
+    /**
+     * Devuelve una fila como mapa de solo lectura (nombre de columna → valor de celda) que lee de las columnas de la tabla.
+     * @param row fila
+     * @return vista de la fila
+     */
+    public Map<String, String> getRow(int row) {
+        if (row < 0 || row >= rowCount) throw new IndexOutOfBoundsException("Fila " + row + " de " + rowCount);
+        return new RowView(row);
+    }
+
+    /**
+     * Copia un rango de filas como lista de mapas (nombre de columna → valor de celda), por ejemplo para devolverlas al frontend.
+     * @param offset primera fila
+     * @param limit número máximo de filas
+     * @return lista de filas del rango
+     */
+    public List<Map<String, String>> getRows(int offset, int limit) {
+        return getRows(offset, limit, null);
+    }
+
+    /**
+     * Copia un rango de filas incluyendo solo algunas columnas.
+     * <p> Las posiciones de las columnas se resuelven una vez para todo el rango; los nombres que no existen se ignoran.
+     * @param offset primera fila
+     * @param limit número máximo de filas
+     * @param projection columnas a incluir, en el orden deseado, o {@code null} para incluirlas todas
+     * @return lista de filas del rango con las columnas pedidas
+     */
+    public List<Map<String, String>> getRows(int offset, int limit, Collection<String> projection) {
+        Map<String, Integer> selected = new LinkedHashMap<>();
+        for (String name : projection == null ? columnNames : projection) {
+            Integer index = columnIndex.get(name);
+            if (index != null) selected.putIfAbsent(name, index);
+        }
+        String[] names = selected.keySet().toArray(new String[0]);
+        int[] indexes = selected.values().stream().mapToInt(Integer::intValue).toArray();
+
+        int from = Math.max(0, Math.min(offset, rowCount));
+        int to = (int) Math.min(rowCount, (long) from + Math.max(0, limit));
+        List<Map<String, String>> rows = new ArrayList<>(to - from);
+        for (int r = from; r < to; r++) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                row.put(names[i], columns[indexes[i]].get(r));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Devuelve una vista de solo lectura de la tabla con solo algunas columnas, sin copiar filas ni valores.
+     * <p> Las posiciones de las columnas se resuelven una vez al crear la vista; cada fila es una vista que lee
+     * directamente de las columnas de la tabla. Los nombres que no existen se ignoran y las columnas conservan
+     * el orden del archivo.
+     * @param projection columnas a incluir
+     * @return lista de filas con las columnas pedidas (nombre de columna → valor de celda)
+     */
+    public List<Map<String, Object>> project(Collection<String> projection) {
+        return new Projection(projection);
+    }
+
+    /**
+     * Recorre las filas de la tabla como vistas de solo lectura, sin copiar sus valores.
+     * @return iterador de filas
+     */
+    @Override
+    public Iterator<Map<String, String>> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < rowCount;
+            }
+
+            @Override
+            public Map<String, String> next() {
+                if (next >= rowCount) throw new NoSuchElementException();
+                return new RowView(next++);
+            }
+        };
+    }
+
+    /**
+     * Vista de solo lectura de las filas de la tabla con un subconjunto de columnas.
+     */
+    private final class Projection extends AbstractList<Map<String, Object>> implements RandomAccess {
+        private final String[] names;
+        private final int[] indexes;
+        private final Map<String, Integer> positions = new HashMap<>();  // nombre → posición en 'indexes'
+
+        private Projection(Collection<String> projection) {
+            List<String> selected = new ArrayList<>();
+            for (String name : columnNames) {
+                if (projection.contains(name)) selected.add(name);
+            }
+            names = selected.toArray(new String[0]);
+            indexes = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                indexes[i] = columnIndex.get(names[i]);
+                positions.put(names[i], i);
+            }
+        }
+
+        @Override
+        public Map<String, Object> get(int row) {
+            if (row < 0 || row >= rowCount) throw new IndexOutOfBoundsException("Fila " + row + " de " + rowCount);
+            return new ProjectedRow(row);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+
+        /**
+         * Vista de solo lectura de una fila con las columnas de la proyección.
+         */
+        private final class ProjectedRow extends AbstractMap<String, Object> {
+            private final int row;
+
+            private ProjectedRow(int row) {
+                this.row = row;
+            }
+
+            @Override
+            public Object get(Object key) {
+                Integer position = positions.get(key);
+                return position == null ? null : columns[indexes[position]].get(row);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return positions.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+
+            @Override
+            public Set<Entry<String, Object>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, Object>> iterator() {
+                        return new Iterator<>() {
+                            private int next = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < names.length;
+                            }
+
+                            @Override
+                            public Entry<String, Object> next() {
+                                if (next >= names.length) throw new NoSuchElementException();
+                                int i = next++;
+                                return new SimpleImmutableEntry<>(names[i], columns[indexes[i]].get(row));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return names.length;
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Vista de solo lectura de una fila de la tabla.
+     */
+    private final class RowView extends AbstractMap<String, String> {
+        private final int row;
+
+        private RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String get(Object key) {
+            Integer index = columnIndex.get(key);
+            return index == null ? null : columns[index].get(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return columnNames.size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    Iterator<String> names = columnNames.iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return names.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            String name = names.next();
+                            return new SimpleImmutableEntry<>(name, columns[columnIndex.get(name)].get(row));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columnNames.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.upm.etsiinf.backend.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Datos de referencia (procesos, indicadores de un proceso o atributos) leídos de la bbdd por defecto,
+ * junto con su ETag.
+ * <p>
+ * El ETag se calcula a partir del contenido, de modo que solo cambia si cambian los datos: el navegador
+ * puede repetir la petición con {@code If-None-Match} y recibir un 304 sin cuerpo mientras no cambien.
+ * Las filas no se pueden modificar, ya que se comparten entre peticiones.
+ * Esta clase proporciona métodos getters estándar.
+ * </p>
+ */
+public class ReferenceData {
+
+    private final List<Map<String, Object>> rows;
+    private final String etag;
+
+    /**
+     * Crea los datos de referencia y calcula su ETag.
+     * @param rows filas leídas de la bbdd
+     */
+    public ReferenceData(List<Map<String, Object>> rows) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.etag = "\"" + digest(rows.toString()) + "\"";
+    }
+
+    /**
+     * @return filas, cada una un mapa columna → valor
+     */
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return ETag del contenido, entre comillas
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    private static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(content.hashCode());  // SHA-256 siempre está disponible
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.upm.etsiinf.backend.model;
+
+/**
+ * Valores de una columna de una {@link ParsedTable}, leídos por fila.
+ * <p>
+ * Las tablas que se van leyendo de un archivo subido usan {@link CompactColumn}; las de solo lectura
+ * ({@link ParsedTable#readOnly}) pueden leer sus valores de otro sitio, por ejemplo de un archivo proyectado en memoria.
+ * </p>
+ */
+public interface TableColumn {
+
+    /**
+     * Devuelve el valor de una fila tal y como se leyó del archivo.
+     * @param row fila
+     * @return valor de la celda ("" si está vacía)
+     */
+    String get(int row);
+
+    /**
+     * Estima la memoria del heap que ocupa la columna.
+     * @return tamaño aproximado en bytes
+     */
+    long estimateSize();
+}
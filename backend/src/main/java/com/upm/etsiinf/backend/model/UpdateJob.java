@@ -0,0 +1,194 @@
+package com.upm.etsiinf.backend.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trabajo de actualización de indicadores que se ejecuta en segundo plano.
+ * <p>
+ * Los resultados de cada celda se añaden a medida que se conocen, de modo que se pueden ir leyendo
+ * (desde una posición dada) mientras el trabajo sigue en marcha. Solo se conservan los últimos 'replayLimit'
+ * resultados: una lectura que se retoma desde una posición anterior continúa por el más antiguo que se conserva.
+ * Los recuentos por año académico y por indicador ({@link #getSummary()}) incluyen siempre todos los resultados.
+ * Es seguro usarlo desde varios hilos: las actualizaciones de distintos años añaden resultados a la vez.
+ * </p>
+ */
+public class UpdateJob {
+
+    /**
+     * Fases por las que pasa un trabajo de actualización.
+     */
+    public enum State { PENDING, RUNNING, DONE, FAILED }
+
+    private final String jobId;
+    private final int replayLimit;
+    private final ArrayDeque<UpdateResult> results = new ArrayDeque<>();  // últimos 'replayLimit' resultados
+    private int discarded;  // resultados ya descartados (posición del primero que se conserva)
+    private final Map<String, UpdateSummary.Counts> byYear = new LinkedHashMap<>();
+    private final Map<String, UpdateSummary.Counts> byIndicator = new LinkedHashMap<>();
+    private long succeeded;
+    private long failed;
+    private State state = State.PENDING;
+    private String errorMessage;
+    private long finishedAt;
+
+    /**
+     * Crea un trabajo pendiente.
+     * @param jobId identificador del trabajo
+     * @param replayLimit número máximo de resultados que se conservan para leerlos
+     */
+    public UpdateJob(String jobId, int replayLimit) {
+        this.jobId = jobId;
+        this.replayLimit = Math.max(1, replayLimit);
+    }
+
+    /**
+     * Devuelve el identificador del trabajo
+     * @return identificador
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Marca el comienzo del trabajo.
+     */
+    public synchronized void start() {
+        state = State.RUNNING;
+    }
+
+    /**
+     * Añade el resultado de una celda y avisa a quien esté esperando resultados.
+     * @param result resultado de la celda
+     */
+    public synchronized void add(UpdateResult result) {
+        results.addLast(result);
+        if (results.size() > replayLimit) {
+            results.removeFirst();
+            discarded++;
+        }
+        if (result.isSuccess()) succeeded++;
+        else failed++;
+        byYear.computeIfAbsent(String.valueOf(result.getYear()), k -> new UpdateSummary.Counts()).add(result.isSuccess());
+        byIndicator.computeIfAbsent(String.valueOf(result.getIndicator()), k -> new UpdateSummary.Counts()).add(result.isSuccess());
+        notifyAll();
+    }
+
+    /**
+     * Marca el trabajo como terminado con éxito.
+     */
+    public synchronized void complete() {
+        finish(State.DONE, null);
+    }
+
+    /**
+     * Marca el trabajo como fallido.
+     * @param errorMessage mensaje de error
+     */
+    public synchronized void fail(String errorMessage) {
+        finish(State.FAILED, errorMessage);
+    }
+
+    private void finish(State state, String errorMessage) {
+        this.state = state;
+        this.errorMessage = errorMessage;
+        this.finishedAt = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    /**
+     * Indica si el trabajo ha terminado, con éxito o con error
+     * @return true si ha terminado
+     */
+    public synchronized boolean isCompleted() {
+        return state == State.DONE || state == State.FAILED;
+    }
+
+    /**
+     * Instante (ms) en el que terminó el trabajo, o 0 si no ha terminado
+     * @return instante de finalización
+     */
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Espera a que haya resultados a partir de la posición 'from' (o a que el trabajo termine) y los devuelve.
+     * Si los resultados desde 'from' ya se han descartado, se devuelven desde el más antiguo que se conserva.
+     * @param from posición del primer resultado que se quiere leer
+     * @param max número máximo de resultados a devolver
+     * @param timeoutMillis tiempo máximo de espera
+     * @return resultados disponibles y su posición; vacío si no hay nuevos al terminar la espera
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public synchronized ResultChunk awaitResults(int from, int max, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (getResultCount() <= from && !isCompleted()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            wait(remaining);
+        }
+        int start = Math.max(from, discarded);
+        int to = Math.min(getResultCount(), start + max);
+        List<UpdateResult> chunk = new ArrayList<>(Math.max(0, to - start));
+        Iterator<UpdateResult> it = results.iterator();
+        for (int i = discarded; i < to && it.hasNext(); i++) {
+            UpdateResult result = it.next();
+            if (i >= start) chunk.add(result);
+        }
+        return new ResultChunk(start, chunk);
+    }
+
+    /**
+     * Número de resultados añadidos hasta el momento (incluidos los ya descartados)
+     * @return número de resultados
+     */
+    public synchronized int getResultCount() {
+        return discarded + results.size();
+    }
+
+    /**
+     * Devuelve una copia del estado y los recuentos actuales del trabajo.
+     * @return resumen del trabajo
+     */
+    public synchronized UpdateSummary getSummary() {
+        Map<String, UpdateSummary.Counts> years = new LinkedHashMap<>();
+        byYear.forEach((k, v) -> years.put(k, v.copy()));
+        Map<String, UpdateSummary.Counts> indicators = new LinkedHashMap<>();
+        byIndicator.forEach((k, v) -> indicators.put(k, v.copy()));
+        return new UpdateSummary(jobId, state.name(), succeeded, failed, years, indicators, errorMessage);
+    }
+
+    /**
+     * Resultados consecutivos de un trabajo, con la posición del primero.
+     */
+    public static final class ResultChunk {
+        private final int from;
+        private final List<UpdateResult> results;
+
+        private ResultChunk(int from, List<UpdateResult> results) {
+            this.from = from;
+            this.results = results;
+        }
+
+        /**
+         * Posición del primer resultado
+         * @return posición
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * Resultados, en orden
+         * @return resultados (vacío si no hay)
+         */
+        public List<UpdateResult> getResults() {
+            return results;
+        }
+    }
+}
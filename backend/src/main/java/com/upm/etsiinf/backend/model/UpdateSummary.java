@@ -0,0 +1,143 @@
+package com.upm.etsiinf.backend.model;
+
+import java.util.Map;
+
+/**
+ * Resumen de un trabajo de actualización de indicadores: estado y número de celdas actualizadas
+ * y fallidas, en total, por año académico y por indicador.
+ * <p>
+ * Permite al frontend conocer el resultado sin descargar todos los {@code UpdateResult}.
+ * Esta clase proporciona métodos getters estándar.
+ * </p>
+ */
+public class UpdateSummary {
+
+    private final String jobId;
+    private final String state;
+    private final long succeeded;
+    private final long failed;
+    private final Map<String, Counts> byYear;
+    private final Map<String, Counts> byIndicator;
+    private final String errorMessage;
+
+    /**
+     * Crea el resumen de un trabajo.
+     * @param jobId identificador del trabajo
+     * @param state estado del trabajo
+     * @param succeeded celdas actualizadas
+     * @param failed celdas no actualizadas
+     * @param byYear recuento por año académico
+     * @param byIndicator recuento por indicador
+     * @param errorMessage mensaje de error si el trabajo completo falló
+     */
+    public UpdateSummary(String jobId, String state, long succeeded, long failed,
+                         Map<String, Counts> byYear, Map<String, Counts> byIndicator, String errorMessage) {
+        this.jobId = jobId;
+        this.state = state;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.byYear = byYear;
+        this.byIndicator = byIndicator;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Devuelve el identificador del trabajo
+     * @return identificador
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Devuelve el estado del trabajo (PENDING, RUNNING, DONE o FAILED)
+     * @return estado
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Número total de celdas actualizadas
+     * @return celdas actualizadas
+     */
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Número total de celdas que no se pudieron actualizar
+     * @return celdas fallidas
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Recuento de celdas por año académico
+     * @return mapa año → recuento
+     */
+    public Map<String, Counts> getByYear() {
+        return byYear;
+    }
+
+    /**
+     * Recuento de celdas por indicador
+     * @return mapa indicador → recuento
+     */
+    public Map<String, Counts> getByIndicator() {
+        return byIndicator;
+    }
+
+    /**
+     * Mensaje de error en caso de que el trabajo completo haya fallado
+     * @return mensaje de error
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Número de celdas actualizadas y fallidas de un grupo.
+     */
+    public static class Counts {
+        private long succeeded;
+        private long failed;
+
+        /**
+         * Suma el resultado de una celda.
+         * @param success si la celda se actualizó
+         */
+        public void add(boolean success) {
+            if (success) succeeded++;
+            else failed++;
+        }
+
+        /**
+         * Copia el recuento.
+         * @return copia
+         */
+        public Counts copy() {
+            Counts copy = new Counts();
+            copy.succeeded = succeeded;
+            copy.failed = failed;
+            return copy;
+        }
+
+        /**
+         * Celdas actualizadas del grupo
+         * @return celdas actualizadas
+         */
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * Celdas fallidas del grupo
+         * @return celdas fallidas
+         */
+        public long getFailed() {
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.upm.etsiinf.backend.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado de la lectura en segundo plano de un archivo subido.
+ * <p>
+ * El hilo que lee el archivo va actualizando el progreso (filas leídas, hojas encontradas) y el frontend
+ * lo consulta periódicamente a través de su identificador. Esta clase proporciona métodos getters estándar.
+ * </p>
+ */
+public class UploadStatus {
+
+    /**
+     * Fases por las que pasa la lectura de un archivo.
+     */
+    public enum State { PENDING, PARSING, DONE, FAILED }
+
+    private final String fileId;
+    private final String fileName;
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicInteger sheetsFound = new AtomicInteger();
+    private volatile State state = State.PENDING;
+    private volatile List<String> sheetNames;
+    private volatile String errorMessage;
+    private volatile long finishedAt;
+
+    /**
+     * Crea el estado de un archivo pendiente de leer.
+     * @param fileId identificador del archivo
+     * @param fileName nombre original del archivo
+     */
+    public UploadStatus(String fileId, String fileName) {
+        this.fileId = fileId;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Marca el comienzo de la lectura.
+     */
+    public void start() {
+        state = State.PARSING;
+    }
+
+    /**
+     * Suma una fila de datos leída.
+     */
+    public void rowParsed() {
+        rowsParsed.incrementAndGet();
+    }
+
+    /**
+     * Suma varias filas de datos leídas de una vez.
+     * @param count filas leídas
+     */
+    public void rowsParsed(long count) {
+        rowsParsed.addAndGet(count);
+    }
+
+    /**
+     * Suma una hoja con cabecera encontrada.
+     */
+    public void sheetFound() {
+        sheetsFound.incrementAndGet();
+    }
+
+    /**
+     * Marca la lectura como terminada con éxito.
+     * @param sheetNames hojas válidas del archivo (vacío para CSV)
+     */
+    public void complete(List<String> sheetNames) {
+        this.sheetNames = sheetNames;
+        this.finishedAt = System.currentTimeMillis();
+        this.state = State.DONE;
+    }
+
+    /**
+     * Marca la lectura como fallida.
+     * @param errorMessage mensaje de error
+     */
+    public void fail(String errorMessage) {
+        this.errorMessage = errorMessage;
+        this.finishedAt = System.currentTimeMillis();
+        this.state = State.FAILED;
+    }
+
+    /**
+     * Devuelve el identificador del archivo
+     * @return identificador
+     */
+    public String getFileId() {
+        return fileId;
+    }
+
+    /**
+     * Devuelve el nombre original del archivo
+     * @return nombre del archivo
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Devuelve la fase en la que está la lectura
+     * @return fase de la lectura
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Indica si la lectura ha terminado, con éxito o con error
+     * @return true si ha terminado
+     */
+    public boolean isCompleted() {
+        return state == State.DONE || state == State.FAILED;
+    }
+
+    /**
+     * Número de filas de datos leídas hasta el momento
+     * @return filas leídas
+     */
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    /**
+     * Número de hojas con cabecera encontradas hasta el momento
+     * @return hojas encontradas
+     */
+    public int getSheetsFound() {
+        return sheetsFound.get();
+    }
+
+    /**
+     * Hojas válidas del archivo, disponibles al terminar la lectura de un Excel
+     * @return nombres de las hojas
+     */
+    public List<String> getSheetNames() {
+        return sheetNames;
+    }
+
+    /**
+     * Mensaje de error en caso de que la lectura haya fallado
+     * @return mensaje de error
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Instante (ms) en el que terminó la lectura, o 0 si no ha terminado
+     * @return instante de finalización
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+}
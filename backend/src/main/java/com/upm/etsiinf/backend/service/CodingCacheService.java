@@ -0,0 +1,270 @@
+package com.upm.etsiinf.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servicio que resuelve y memoriza los códigos (coding) de procesos, indicadores y atributos.
+ * <p>
+ * Los códigos no cambian durante una subida, por lo que se consultan una sola vez por base de datos
+ * (los indicadores con una única consulta {@code IN (...)}) en lugar de una vez por celda.
+ * Si 'app.coding-cache.ttl-seconds' es mayor que 0, los códigos resueltos se conservan además entre peticiones
+ * durante ese tiempo; con 0 solo se memorizan dentro de cada petición. La caché guarda como mucho
+ * 'app.coding-cache.max-entries' códigos: las entradas caducadas se desalojan al insertar (como mucho una vez
+ * por TTL), y si aun así está llena el código se devuelve sin memorizarlo. Solo se memorizan respuestas de la bbdd
+ * (un código, o que no existe): si la consulta falla, el código se devuelve vacío sin memorizarlo.
+ * </p>
+ * <p>
+ * Publica el tiempo de las consultas a la bbdd ('update.coding.lookup', etiqueta 'type') y los aciertos y fallos
+ * de la caché ('update.coding.cache', etiqueta 'result').
+ * </p>
+ */
+@Service
+public class CodingCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(CodingCacheService.class);
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, CachedCoding> cache = new ConcurrentHashMap<>();  // clave: año|tipo|id
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    private final Timer processLookup;
+    private final Timer indicatorLookup;
+    private final Timer attributeLookup;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * Constructor de CodingCacheService
+     * @param meterRegistry registro de métricas (opcional)
+     * @param ttlSeconds segundos que se conserva cada código resuelto (0 desactiva la caché entre peticiones)
+     * @param maxEntries número máximo de códigos memorizados
+     */
+    public CodingCacheService(ObjectProvider<MeterRegistry> meterRegistry,
+                              @Value("${app.coding-cache.ttl-seconds:0}") long ttlSeconds,
+                              @Value("${app.coding-cache.max-entries:10000}") int maxEntries) {
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000;
+        this.maxEntries = Math.max(0, maxEntries);
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.processLookup = Timer.builder("update.coding.lookup").tag("type", "process").register(registry);
+        this.indicatorLookup = Timer.builder("update.coding.lookup").tag("type", "indicator").register(registry);
+        this.attributeLookup = Timer.builder("update.coding.lookup").tag("type", "attribute").register(registry);
+        this.hits = Counter.builder("update.coding.cache").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("update.coding.cache").tag("result", "miss").register(registry);
+    }
+
+    /**
+     * Recupera el código de un proceso cuyo id es 'processId'.
+     * @param year año academico de la bbdd
+     * @param jdbcTemplate plantilla de la bbdd del año academico
+     * @param processId identificador del proceso
+     * @return código del proceso, o cadena vacía si no se encuentra
+     */
+    public String getProcessCoding(String year, JdbcTemplate jdbcTemplate, String processId) {
+        String key = key(year, "process", processId);
+        String cached = lookup(key);
+        if (cached != null) return cached;
+
+        String sql = "SELECT coding FROM process WHERE id = ?";
+        String coding;
+        long start = System.nanoTime();
+        try {
+            coding = jdbcTemplate.queryForObject(sql, new Object[]{processId}, String.class);
+        } catch (IncorrectResultSizeDataAccessException e) {
+            coding = "";  // no existe
+        } catch (DataAccessException e) {
+            log.warn("No se pudo obtener el código del proceso {} en {}: {}", processId, year, e.getMessage());
+            return "";
+        } finally {
+            processLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        store(key, coding);
+        return coding;
+    }
+
+    /**
+     * Recupera los códigos de varios indicadores a partir de sus nombres, con una única consulta a la bbdd
+     * para todos los que no estén ya en caché.
+     * <p> Los indicadores que no existen, o cuyo nombre está repetido en la tabla, se devuelven con cadena vacía.
+     * Los nombres se comparan como los compara MySQL (ver {@link Collation}); si varias filas coinciden
+     * con un nombre, se consulta ese nombre por separado para que decida la collation de la columna.
+     * @param year año academico de la bbdd
+     * @param jdbcTemplate plantilla de la bbdd del año academico
+     * @param indicatorNames nombres de los indicadores
+     * @return mapa nombre del indicador → código del indicador
+     */
+    public Map<String, String> getIndicatorCodings(String year, JdbcTemplate jdbcTemplate, Collection<String> indicatorNames) {
+        Map<String, String> codings = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String name : indicatorNames) {
+            String cached = lookup(key(year, "indicator", name));
+            if (cached != null) {
+                codings.put(name, cached);
+            } else {
+                missing.add(name);
+            }
+        }
+        if (missing.isEmpty()) return codings;
+
+        Map<String, List<String>> found = new HashMap<>();  // nombre normalizado → códigos de las filas que coinciden
+        long start = System.nanoTime();
+        try {
+            String placeholders = String.join(",", Collections.nCopies(missing.size(), "?"));
+            String sql = "SELECT indicator_name, coding FROM indicator WHERE indicator_name IN (" + placeholders + ")";
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, new ArrayList<>(missing).toArray());
+            for (Map<String, Object> row : rows) {
+                String name = Collation.normalize((String) row.get("indicator_name"));
+                found.computeIfAbsent(name, k -> new ArrayList<>(1)).add((String) row.get("coding"));
+            }
+        } catch (DataAccessException e) {
+            log.warn("No se pudieron obtener los códigos de los indicadores en {}: {}", year, e.getMessage());
+            for (String name : missing) {
+                codings.put(name, "");  // no se memoriza: se volverá a consultar
+            }
+            return codings;
+        } finally {
+            indicatorLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        for (String name : missing) {
+            List<String> matches = found.get(Collation.normalize(name));
+            String coding;
+            if (matches == null) {
+                coding = "";  // no existe
+                store(key(year, "indicator", name), coding);
+            } else if (matches.size() == 1) {
+                coding = matches.get(0);
+                store(key(year, "indicator", name), coding);
+            } else {
+                coding = getIndicatorCoding(year, jdbcTemplate, name);
+            }
+            codings.put(name, coding != null ? coding : "");
+        }
+        return codings;
+    }
+
+    /**
+     * Consulta el código de un único indicador, cuando varias filas de la consulta conjunta coinciden con su nombre.
+     * @param year año academico de la bbdd
+     * @param jdbcTemplate plantilla de la bbdd del año academico
+     * @param indicatorName nombre del indicador
+     * @return código del indicador, o cadena vacía si no existe o está repetido
+     */
+    private String getIndicatorCoding(String year, JdbcTemplate jdbcTemplate, String indicatorName) {
+        String sql = "SELECT coding FROM indicator WHERE indicator_name = ?";
+        String coding;
+        long start = System.nanoTime();
+        try {
+            coding = jdbcTemplate.queryForObject(sql, new Object[]{indicatorName}, String.class);
+        } catch (IncorrectResultSizeDataAccessException e) {
+            coding = "";  // no existe, o el nombre no identifica un único indicador
+        } catch (DataAccessException e) {
+            log.warn("No se pudo obtener el código del indicador {} en {}: {}", indicatorName, year, e.getMessage());
+            return "";
+        } finally {
+            indicatorLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        store(key(year, "indicator", indicatorName), coding);
+        return coding;
+    }
+
+    /**
+     * Recupera el código de un atributo cuyo id es 'id'.
+     * @param jdbcTemplate plantilla de la bbdd por defecto
+     * @param id identificador del atributo
+     * @return código del atributo
+     */
+    public String getAttributeCoding(JdbcTemplate jdbcTemplate, String id) {
+        String key = key("default", "attribute", id);
+        String cached = lookup(key);
+        if (cached != null) return cached;
+
+        String sql = "SELECT coding FROM attribute WHERE id = ?";
+        long start = System.nanoTime();
+        String coding;
+        try {
+            coding = jdbcTemplate.queryForObject(sql, new Object[]{id}, String.class);
+        } finally {
+            attributeLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        store(key, coding);
+        return coding;
+    }
+
+    /**
+     * Vacía la caché de códigos, por ejemplo tras modificar procesos o indicadores en la bbdd.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    private String lookup(String key) {
+        if (ttlMillis <= 0) return null;
+        CachedCoding cached = cache.get(key);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (cached.expiresAt < now) {
+            cache.remove(key, cached);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.coding;
+    }
+
+    private void store(String key, String coding) {
+        if (ttlMillis <= 0 || coding == null) return;
+        long now = System.currentTimeMillis();
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + ttlMillis)) {
+            cache.values().removeIf(c -> c.expiresAt < now);
+        }
+        if (cache.size() >= maxEntries && !cache.containsKey(key)) {
+            log.debug("Caché de códigos llena ({} entradas); no se memoriza {}", maxEntries, key);
+            return;
+        }
+        cache.put(key, new CachedCoding(coding, now + ttlMillis));
+    }
+
+    private static String key(String year, String type, String id) {
+        return year + "|" + type + "|" + id;
+    }
+
+    /**
+     * Código memorizado junto con el instante en el que caduca.
+     */
+    private static final class CachedCoding {
+        private final String coding;
+        private final long expiresAt;
+
+        private CachedCoding(String coding, long expiresAt) {
+            this.coding = coding;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.upm.etsiinf.backend.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Comparación en memoria de cadenas como las compara MySQL.
+ * <p>
+ * MySQL compara las cadenas según la collation de la columna, normalmente sin distinguir mayúsculas ni tildes
+ * y sin tener en cuenta los espacios finales. {@link #normalize} las transforma de la misma forma (o de forma
+ * más permisiva), de modo que dos cadenas que MySQL considera iguales tienen siempre la misma forma normalizada.
+ * </p>
+ */
+final class Collation {
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");  // tildes y diacríticos tras normalizar a NFD
+
+    private Collation() {
+    }
+
+    /**
+     * Normaliza una cadena: sin tildes, en minúsculas y sin espacios finales.
+     * @param value cadena
+     * @return cadena normalizada ("" si es {@code null})
+     */
+    static String normalize(String value) {
+        if (value == null) return "";
+        String stripped = ACCENTS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        return stripped.toLowerCase(Locale.ROOT).stripTrailing();
+    }
+}
@@ -1,8 +1,13 @@
 package com.upm.etsiinf.backend.service;
 
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -14,32 +19,66 @@ import java.util.stream.Collectors;
 
 /**
  * Servicio encargado de establecer conexion con todas las bases de datos, segun el anioo academico.
+ * <p>
+ * Cada año académico dispone de su propio pool de conexiones (HikariCP), de modo que las conexiones físicas
+ * con MySQL se reutilizan entre sentencias y peticiones en lugar de abrirse una por sentencia.
+ * </p>
  */
 @Service
 public class DBManagerService {
 
     private final Map<String, JdbcTemplate> yearTemplate = new HashMap<>();
+    private final Map<String, HikariDataSource> yearDataSource = new HashMap<>();
 
     /**
      * Lee las credenciales de conexión desde el archivo de propiedades llamado db-config.properties.
      * En este archivo se especifica, para cada año académico, la URL de conexión, el nombre de usuario y la contraseña correspondientes.
-     * A partir de esta información, se instancia un objeto {@code JdbcTemplate} por año,
+     * A partir de esta información, se crea un pool de conexiones y un objeto {@code JdbcTemplate} por año,
      *  que luego se almacena en un mapa {@code Map<String, JdbcTemplate>}.
      * para acceder dinámicamente a la base de datos deseada.
+     * <p> El tamaño de los pools y sus tiempos de validación y detección de fugas se configuran en 'application.properties'
+     * (propiedades 'app.db.pool.*'). Si hay un registro de métricas disponible, cada pool publica sus métricas con el nombre 'pac-AAAA_AAAA'.
+     * @param meterRegistry registro de métricas (opcional)
+     * @param minIdle conexiones inactivas que se mantienen abiertas en cada pool
+     * @param maxSize número máximo de conexiones de cada pool
+     * @param connectionTimeoutMs milisegundos que se espera por una conexión libre antes de fallar
+     * @param validationTimeoutMs milisegundos que se espera a que una conexión se valide
+     * @param leakDetectionMs milisegundos tras los que una conexión no devuelta al pool se notifica como posible fuga (0 lo desactiva)
      * @throws IOException excepcion
      */
-    public DBManagerService() throws IOException {
+    public DBManagerService(ObjectProvider<MeterRegistry> meterRegistry,
+                            @Value("${app.db.pool.min-idle:1}") int minIdle,
+                            @Value("${app.db.pool.max-size:10}") int maxSize,
+                            @Value("${app.db.pool.connection-timeout-ms:30000}") long connectionTimeoutMs,
+                            @Value("${app.db.pool.validation-timeout-ms:5000}") long validationTimeoutMs,
+                            @Value("${app.db.pool.leak-detection-ms:60000}") long leakDetectionMs) throws IOException {
         Properties props = new Properties();
         props.load(getClass().getClassLoader().getResourceAsStream("db-config.properties"));
         Set<String> years = props.stringPropertyNames().stream().map(key -> key.split("\\.")[1]).collect(Collectors.toSet());
+        MeterRegistry registry = meterRegistry.getIfAvailable();
         for (String year : years) {
             String url = props.getProperty("db." + year + ".url");
             String username = props.getProperty("db." + year + ".username");
             String password = props.getProperty("db." + year + ".password");
 
-            DriverManagerDataSource dataSource = new DriverManagerDataSource(url, username, password);
-            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
-            yearTemplate.put(year, jdbcTemplate);
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("pac-" + year);
+            config.setJdbcUrl(url);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMinimumIdle(minIdle);
+            config.setMaximumPoolSize(maxSize);
+            config.setConnectionTimeout(connectionTimeoutMs);
+            config.setValidationTimeout(validationTimeoutMs);
+            config.setLeakDetectionThreshold(leakDetectionMs);
+            config.setInitializationFailTimeout(-1); // no impedir el arranque si la bbdd de algún año no está disponible
+            if (registry != null) {
+                config.setMetricRegistry(registry);
+            }
+
+            HikariDataSource dataSource = new HikariDataSource(config);
+            yearDataSource.put(year, dataSource);
+            yearTemplate.put(year, new JdbcTemplate(dataSource));
         }
     }
 
@@ -51,4 +90,14 @@ public class DBManagerService {
     public JdbcTemplate getJdbcTemplate(String year) {
         return yearTemplate.get(year);
     }
+
+    /**
+     * Cierra los pools de conexiones al detener la aplicación.
+     */
+    @PreDestroy
+    public void close() {
+        for (HikariDataSource dataSource : yearDataSource.values()) {
+            dataSource.close();
+        }
+    }
 }
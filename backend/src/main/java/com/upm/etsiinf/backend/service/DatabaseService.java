@@ -1,33 +1,165 @@
 package com.upm.etsiinf.backend.service;
 
+import com.upm.etsiinf.backend.model.ReferenceData;
 import com.upm.etsiinf.backend.model.UpdateResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Servicio encargado de comunicarse con las bases de datos
+ * <p>
+ * Publica el tiempo de la actualización de cada año ('update.year') y de cada transacción ('update.transaction'),
+ * ambos con la etiqueta 'year' ('unknown' si el año del archivo no tiene bbdd), las celdas actualizadas y fallidas
+ * ('update.cells') y los reintentos por bloqueo ('update.transaction.retries'). El uso de conexiones de cada año lo publica su pool ('hikaricp.connections.*').
+ * </p>
  */
 @Service
 public class DatabaseService {
 
+    private static final Logger log = LoggerFactory.getLogger(DatabaseService.class);
+
     private final JdbcTemplate defaultJdbcTemplate;  // para obtener procesos e indicadores
     private final DBManagerService gestor;
+    private final CodingCacheService codingCache;
+    private final int batchSize;  // numero maximo de UPDATE por lote enviado a cada bbdd
+    private final int stagingThreshold;  // celdas de un año a partir de las que se actualiza con tabla temporal (0 = nunca)
+    private final boolean prevalidate;   // descartar en memoria las celdas cuyo indicator_instance no existe
+    private final int commitSize;        // numero maximo de UPDATE por transaccion
+    private final int retryAttempts;     // intentos de una transaccion que falla por interbloqueo o espera de bloqueo
+    private final long retryBackoffMillis;  // espera antes del primer reintento (se duplica en cada uno)
+    private final Map<String, TransactionTemplate> transactions = new ConcurrentHashMap<>();  // una por bbdd (año)
+    private final ExecutorService updateExecutor;  // actualiza en paralelo las bbdd de distintos años (null si es secuencial)
+    private final long referenceTtlMillis;  // tiempo que se conservan procesos, indicadores y atributos (0 = sin caché)
+    private final Map<String, CachedReference> referenceCache = new ConcurrentHashMap<>();  // clave: tipo|id
+
+    private final MeterRegistry registry;
+    private final Counter cellsUpdated;
+    private final Counter cellsFailed;
+    private final Counter lockRetries;
+    private final Timer instancesLookup;
+
+    private static final String UPDATE_SQL = "UPDATE indicator_instance "
+            + "SET field = ?, valid = true, modified_date = ? "
+            + "WHERE indicator_name = ? AND coding = ?";
+
+    // Tabla temporal (propia de cada conexión) con las columnas de indicator_instance que se actualizan
+    private static final String STAGING_TABLE = "indicator_instance_staging";
+    private static final String CREATE_STAGING_SQL = "CREATE TEMPORARY TABLE " + STAGING_TABLE
+            + " (seq INT NOT NULL PRIMARY KEY, INDEX (indicator_name, coding)) "
+            + "SELECT indicator_name, coding, field, modified_date FROM indicator_instance WHERE 1 = 0";
+    private static final String INSERT_STAGING_SQL = "INSERT INTO " + STAGING_TABLE
+            + " (seq, field, modified_date, indicator_name, coding) VALUES ";
+    private static final String MATCHED_STAGING_SQL = "SELECT s.seq, COUNT(*) FROM " + STAGING_TABLE + " s "
+            + "JOIN indicator_instance i ON i.indicator_name = s.indicator_name AND i.coding = s.coding "
+            + "GROUP BY s.seq";
+    private static final String UPDATE_FROM_STAGING_SQL = "UPDATE indicator_instance i "
+            + "JOIN " + STAGING_TABLE + " s ON i.indicator_name = s.indicator_name AND i.coding = s.coding "
+            + "SET i.field = s.field, i.valid = true, i.modified_date = s.modified_date";
+
+    // Instancias de indicador existentes de un proceso: su código empieza por el del proceso seguido de '-'
+    private static final String INSTANCES_SQL = "SELECT indicator_name, coding FROM indicator_instance "
+            + "WHERE coding LIKE ? ESCAPE '!'";
+
+    private static final String NOT_FOUND_MESSAGE = "No se ha encontrado el indicador asociado al proceso y/o atributo seleccionado ";
 
     /**
      * Constructor de DatabaseService
      * @param defaultJdbcTemplate conexion bbdd por defecto
      * @param gestor gestor de multiples bbdd
+     * @param codingCache servicio que resuelve y memoriza los códigos de procesos, indicadores y atributos
+     * @param meterRegistry registro de métricas (opcional)
+     * @param batchSize numero maximo de actualizaciones que se envian juntas en un mismo lote (propiedad 'app.update.batch-size')
+     * @param parallelism numero maximo de bbdd (años academicos) que se actualizan a la vez (propiedad 'app.update.parallelism', 1 = secuencial)
+     * @param stagingThreshold celdas de un mismo año a partir de las que se actualiza con una tabla temporal
+     *                         (propiedad 'app.update.staging-threshold', 0 = siempre por lotes)
+     * @param prevalidate si se comprueba en memoria que existe el indicator_instance de cada celda antes de enviar
+     *                    su UPDATE (propiedad 'app.update.prevalidate')
+     * @param commitSize numero maximo de actualizaciones que se confirman en una misma transaccion (propiedad 'app.update.commit-size')
+     * @param retryAttempts intentos de una transaccion que falla por interbloqueo o por agotar la espera de un bloqueo
+     *                      (propiedad 'app.update.retry.max-attempts')
+     * @param retryBackoffMillis milisegundos de espera antes del primer reintento, que se duplican en cada reintento
+     *                           (propiedad 'app.update.retry.backoff-ms')
+     * @param referenceTtlSeconds segundos que se conservan en memoria los procesos, indicadores y atributos
+     *                            (propiedad 'app.reference-cache.ttl-seconds', 0 = se consultan siempre)
      */
     @Autowired
-    public DatabaseService(JdbcTemplate defaultJdbcTemplate, DBManagerService gestor) {
+    public DatabaseService(JdbcTemplate defaultJdbcTemplate, DBManagerService gestor, CodingCacheService codingCache,
+                           ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${app.update.batch-size:1000}") int batchSize,
+                           @Value("${app.update.parallelism:4}") int parallelism,
+                           @Value("${app.update.staging-threshold:20000}") int stagingThreshold,
+                           @Value("${app.update.prevalidate:true}") boolean prevalidate,
+                           @Value("${app.update.commit-size:1000}") int commitSize,
+                           @Value("${app.update.retry.max-attempts:3}") int retryAttempts,
+                           @Value("${app.update.retry.backoff-ms:100}") long retryBackoffMillis,
+                           @Value("${app.reference-cache.ttl-seconds:300}") long referenceTtlSeconds) {
         this.defaultJdbcTemplate = defaultJdbcTemplate;
         this.gestor = gestor;
+        this.codingCache = codingCache;
+        this.batchSize = Math.max(1, batchSize);
+        this.stagingThreshold = Math.max(0, stagingThreshold);
+        this.prevalidate = prevalidate;
+        this.commitSize = Math.max(1, commitSize);
+        this.retryAttempts = Math.max(1, retryAttempts);
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+        this.referenceTtlMillis = Math.max(0, referenceTtlSeconds) * 1000;
+        this.registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.cellsUpdated = Counter.builder("update.cells").tag("result", "success").register(registry);
+        this.cellsFailed = Counter.builder("update.cells").tag("result", "failure").register(registry);
+        this.lockRetries = Counter.builder("update.transaction.retries").register(registry);
+        this.instancesLookup = Timer.builder("update.coding.lookup").tag("type", "instance").register(registry);
+        if (parallelism > 1) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.updateExecutor = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "year-update-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.updateExecutor = null;
+        }
     }
 
 /**
@@ -35,8 +167,19 @@ public class DatabaseService {
  * @return Lista de  mapas, donde cada mapa es un proceso con los campos (id, coding, process_name).
  */
     public List<Map<String, Object>> getProcesses() {
-        String sql = "SELECT id, coding, process_name FROM process";
-        return defaultJdbcTemplate.queryForList(sql);
+        return getProcessesReference().getRows();
+    }
+
+    /**
+     * Igual que {@link #getProcesses()}, junto con el ETag de la lista.
+     * <p> La lista se conserva en memoria durante 'app.reference-cache.ttl-seconds'.
+     * @return procesos y su ETag
+     */
+    public ReferenceData getProcessesReference() {
+        return reference("process", () -> {
+            String sql = "SELECT id, coding, process_name FROM process";
+            return defaultJdbcTemplate.queryForList(sql);
+        });
     }
 
 /**
@@ -49,12 +192,24 @@ public class DatabaseService {
  * ig_coding e indicator_group_name.
  */
     public List<Map<String, Object>> getIndicatorsbyProcess(int processId) {
-        String sql = "SELECT i.id, i.coding, i.indicator_name, " +
-                "ig.id as indicator_group_id, ig.coding as ig_coding, ig.indicator_group_name " +
-                "FROM indicator i " +
-                "JOIN indicator_group ig ON i.indicator_group_id = ig.id " +
-                "WHERE ig.process_id = ?";
-        return defaultJdbcTemplate.queryForList(sql, processId);
+        return getIndicatorsReference(processId).getRows();
+    }
+
+    /**
+     * Igual que {@link #getIndicatorsbyProcess(int)}, junto con el ETag de la lista.
+     * <p> La lista de cada proceso se conserva en memoria durante 'app.reference-cache.ttl-seconds'.
+     * @param processId ID del proceso cuyos indicadores se desean consultar.
+     * @return indicadores del proceso y su ETag
+     */
+    public ReferenceData getIndicatorsReference(int processId) {
+        return reference("indicators|" + processId, () -> {
+            String sql = "SELECT i.id, i.coding, i.indicator_name, " +
+                    "ig.id as indicator_group_id, ig.coding as ig_coding, ig.indicator_group_name " +
+                    "FROM indicator i " +
+                    "JOIN indicator_group ig ON i.indicator_group_id = ig.id " +
+                    "WHERE ig.process_id = ?";
+            return defaultJdbcTemplate.queryForList(sql, processId);
+        });
     }
 
     /**
@@ -62,8 +217,48 @@ public class DatabaseService {
      * @return Lista de  mapas, donde cada mapa es un atributo con los campos (id, coding, description).
      */
     public List<Map<String, Object>> getAttributes() {
-        String sql = "SELECT id, coding, description, position FROM attribute";
-        return defaultJdbcTemplate.queryForList(sql);
+        return getAttributesReference().getRows();
+    }
+
+    /**
+     * Igual que {@link #getAttributes()}, junto con el ETag de la lista.
+     * <p> La lista se conserva en memoria durante 'app.reference-cache.ttl-seconds'.
+     * @return atributos y su ETag
+     */
+    public ReferenceData getAttributesReference() {
+        return reference("attribute", () -> {
+            String sql = "SELECT id, coding, description, position FROM attribute";
+            return defaultJdbcTemplate.queryForList(sql);
+        });
+    }
+
+    /**
+     * Vacía la caché de procesos, indicadores y atributos, y la de sus códigos, para que la siguiente
+     * consulta lea la bbdd (por ejemplo, tras dar de alta un indicador).
+     */
+    public void invalidateReferenceData() {
+        referenceCache.clear();
+        codingCache.invalidate();
+    }
+
+    /**
+     * Devuelve unos datos de referencia de la caché, o los consulta si no están o han caducado.
+     * <p> Si dos peticiones los consultan a la vez, ambas leen la bbdd y se conserva la última lectura.
+     * @param key tipo (e id) de los datos
+     * @param query consulta a la bbdd por defecto
+     * @return datos de referencia y su ETag
+     */
+    private ReferenceData reference(String key, Supplier<List<Map<String, Object>>> query) {
+        long now = System.currentTimeMillis();
+        CachedReference cached = referenceCache.get(key);
+        if (cached != null && cached.expiresAt >= now) return cached.data;
+
+        ReferenceData data = new ReferenceData(query.get());
+        if (referenceTtlMillis > 0) {
+            referenceCache.values().removeIf(c -> c.expiresAt < now);  // se aprovecha para desalojar los caducados
+            referenceCache.put(key, new CachedReference(data, now + referenceTtlMillis));
+        }
+        return data;
     }
 
     /**
@@ -81,6 +276,31 @@ public class DatabaseService {
      *   + se marca como válido
      *   + se actualizando la fecha de modificación a 'date'.
      *  </p>
+     *  <p> Las filas se reparten por año académico y cada base de datos se actualiza en paralelo
+     *  (como máximo 'app.update.parallelism' a la vez). Los resultados se devuelven en el orden original
+     *  de las filas, con un {@code UpdateResult} por cada columna mapeada.
+     *  </p>
+     *  <p> Los UPDATE no se envían uno a uno: se agrupan por base de datos (año académico) y se ejecutan
+     *  con {@code batchUpdate} en lotes de como máximo 'app.update.batch-size' sentencias. El número de filas
+     *  actualizadas de cada sentencia del lote se traslada a su {@code UpdateResult}, que conserva la posición
+     *  de la celda en la lista de resultados.
+     *  </p>
+     *  <p> Los códigos del proceso, de los indicadores mapeados y del atributo se resuelven una sola vez
+     *  por base de datos antes de recorrer las filas (ver {@link CodingCacheService}).
+     *  </p>
+     *  <p> Si un año tiene al menos 'app.update.staging-threshold' celdas (por ejemplo, al recargar un año completo),
+     *  sus actualizaciones se cargan en una tabla temporal con INSERT de varias filas y se aplican con un único
+     *  UPDATE ... JOIN; cada celda sigue recibiendo su {@code UpdateResult} según haya encontrado o no su indicador.
+     *  </p>
+     *  <p> Si 'app.update.prevalidate' está activo, antes de recorrer las filas se cargan con una sola consulta
+     *  las instancias de indicador existentes del proceso en cada base de datos. Las celdas cuyo código compuesto no
+     *  existe se informan como no encontradas sin enviar su UPDATE; solo llegan a la base de datos las que existen.
+     *  </p>
+     *  <p> Los UPDATE de cada año se confirman en transacciones de como máximo 'app.update.commit-size' sentencias
+     *  (o una sola con la tabla temporal), y los resultados se publican después de cada commit. Una transacción que
+     *  falla por interbloqueo o por agotar la espera de un bloqueo se repite hasta 'app.update.retry.max-attempts'
+     *  veces, esperando cada vez el doble ('app.update.retry.backoff-ms').
+     *  </p>
      * @param processId  ID del proceso cuyos indicadores se desean consultar.
      * @param columnMapping Columnas mapeadas por el usuario
      * @param data datos del archivo (tabla)
@@ -98,140 +318,739 @@ public class DatabaseService {
             String attribute,
             String AttributeValueColumn,  String academicYearColumn) {
 
-        List<UpdateResult> results = new ArrayList<>();
+        return updateIndicatorInstance(processId, columnMapping, data, date, attribute, AttributeValueColumn,
+                academicYearColumn, false);
+    }
+
+    /**
+     * Igual que {@link #updateIndicatorInstance(String, Map, List, Date, String, String, String)}, pudiendo pedir que
+     * cada año se aplique entero o nada.
+     * <p> Con 'allOrNothing', todos los UPDATE de un año se ejecutan en una única transacción que se revierte si
+     * alguna celda del año falla; en ese caso las celdas que sí se podían aplicar se informan como no aplicadas.
+     * Los años son independientes: unos pueden aplicarse y otros revertirse.
+     * @param processId  ID del proceso cuyos indicadores se desean consultar.
+     * @param columnMapping Columnas mapeadas por el usuario
+     * @param data datos del archivo (tabla)
+     * @param date fecha de subida
+     * @param attribute atributo asociado a los indicadores
+     * @param AttributeValueColumn valor del atributo
+     * @param academicYearColumn columna que contiene los años academicos
+     * @param allOrNothing si cada año se aplica completo o no se aplica
+     * @return Lista de resultados de la actialización. tipo UpdateResult
+     */
+    public List<UpdateResult> updateIndicatorInstance(
+            String processId,
+            Map<String, String> columnMapping,
+            List<Map<String, Object>> data,
+            Date date,
+            String attribute,
+            String AttributeValueColumn,  String academicYearColumn,
+            boolean allOrNothing) {
+
         if (data == null || data.isEmpty()) {
-            return results;
+            return new ArrayList<>();
         }
+        UpdateRequest request = run(processId, columnMapping, data, date, attribute, AttributeValueColumn,
+                academicYearColumn, allOrNothing, true, null);
+        return new ArrayList<>(Arrays.asList(request.results));
+    }
 
-        String sql = "UPDATE indicator_instance "
-                + "SET field = ?, valid = true, modified_date = ? "
-                + "WHERE indicator_name = ? AND coding = ?";
+    /**
+     * Igual que {@link #updateIndicatorInstance(String, Map, List, Date, String, String, String)}, pero en lugar de
+     * devolver la lista completa entrega cada {@code UpdateResult} a 'listener' en cuanto se conoce
+     * (al terminar cada lote), sin guardar los resultados en memoria.
+     * <p> El orden de entrega es el de finalización: los años se actualizan en paralelo, por lo que sus resultados
+     * pueden llegar intercalados. 'listener' se llama desde varios hilos y debe ser seguro entre hilos.
+     * @param processId  ID del proceso cuyos indicadores se desean consultar.
+     * @param columnMapping Columnas mapeadas por el usuario
+     * @param data datos del archivo (tabla)
+     * @param date fecha de subida
+     * @param attribute atributo asociado a los indicadores
+     * @param AttributeValueColumn valor del atributo
+     * @param academicYearColumn columna que contiene los años academicos
+     * @param listener receptor de los resultados
+     */
+    public void updateIndicatorInstance(
+            String processId,
+            Map<String, String> columnMapping,
+            List<Map<String, Object>> data,
+            Date date,
+            String attribute,
+            String AttributeValueColumn,  String academicYearColumn,
+            Consumer<UpdateResult> listener) {
+        updateIndicatorInstance(processId, columnMapping, data, date, attribute, AttributeValueColumn,
+                academicYearColumn, false, listener);
+    }
+
+    /**
+     * Igual que {@link #updateIndicatorInstance(String, Map, List, Date, String, String, String, Consumer)}, pudiendo
+     * pedir que cada año se aplique entero o nada (ver {@link #updateIndicatorInstance(String, Map, List, Date, String, String, String, boolean)}).
+     * @param processId  ID del proceso cuyos indicadores se desean consultar.
+     * @param columnMapping Columnas mapeadas por el usuario
+     * @param data datos del archivo (tabla)
+     * @param date fecha de subida
+     * @param attribute atributo asociado a los indicadores
+     * @param AttributeValueColumn valor del atributo
+     * @param academicYearColumn columna que contiene los años academicos
+     * @param allOrNothing si cada año se aplica completo o no se aplica
+     * @param listener receptor de los resultados
+     */
+    public void updateIndicatorInstance(
+            String processId,
+            Map<String, String> columnMapping,
+            List<Map<String, Object>> data,
+            Date date,
+            String attribute,
+            String AttributeValueColumn,  String academicYearColumn,
+            boolean allOrNothing,
+            Consumer<UpdateResult> listener) {
+
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+        run(processId, columnMapping, data, date, attribute, AttributeValueColumn, academicYearColumn,
+                allOrNothing, false, listener);
+    }
+
+    /**
+     * Reparte las filas por año académico y actualiza cada base de datos.
+     * @return la petición, con los resultados si 'keepResults' es {@code true}
+     */
+    private UpdateRequest run(String processId, Map<String, String> columnMapping, List<Map<String, Object>> data,
+                              Date date, String attribute, String AttributeValueColumn, String academicYearColumn,
+                              boolean allOrNothing, boolean keepResults, Consumer<UpdateResult> listener) {
+        boolean yearAttribute = false;
+        if (attribute != null && AttributeValueColumn != null && !AttributeValueColumn.trim().isEmpty()) {
+            yearAttribute = "YY-ZZ".equals(codingCache.getAttributeCoding(defaultJdbcTemplate, attribute));
+        }
+        UpdateRequest request = new UpdateRequest(processId, columnMapping, data, date,
+                attribute == null ? null : AttributeValueColumn, yearAttribute, allOrNothing, keepResults, listener,
+                cellsUpdated, cellsFailed);
 
-        for (Map<String, Object> fila : data) {
-            //  1. Obtener el año académico para conectar a la base de datos
-            String rawYear = (String) fila.get(academicYearColumn);
-            String year = transformDBYear(rawYear);
-            JdbcTemplate jdbc = gestor.getJdbcTemplate(year);
+        //  1. Repartir las filas según la base de datos (año académico) a la que van dirigidas
+        Map<String, List<Integer>> rowsByYear = new LinkedHashMap<>();
+        for (int i = 0; i < data.size(); i++) {
+            String year = transformDBYear((String) data.get(i).get(academicYearColumn));
+            rowsByYear.computeIfAbsent(year, y -> new ArrayList<>()).add(i);
+        }
 
-            if (jdbc == null) {
+        //  2. Actualizar cada base de datos por separado, en paralelo si hay varias
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : rowsByYear.entrySet()) {
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                try {
+                    updateYear(request, entry.getKey(), entry.getValue());
+                } finally {
+                    // Solo se etiquetan los años con bbdd: el resto viene del archivo y podría ser cualquier texto
+                    String year = entry.getKey();
+                    String tag = year != null && gestor.getJdbcTemplate(year) != null ? year : "unknown";
+                    Timer.builder("update.year").tag("year", tag).register(registry)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+        return request;
+    }
+
+    /**
+     * Actualiza en la base de datos de un año académico las filas que le corresponden.
+     * <p> Cada fila ocupa en {@code request.results} las posiciones [fila * columnas, (fila + 1) * columnas),
+     * por lo que varios años pueden rellenar sus resultados a la vez sin interferir entre sí.
+     * @param request datos de la petición de actualización
+     * @param year año academico de la bbdd
+     * @param rows índices de las filas del archivo que pertenecen a ese año
+     */
+    private void updateYear(UpdateRequest request, String year, List<Integer> rows) {
+        Map<String, String> columnMapping = request.columnMapping;
+        int columns = columnMapping.size();
+        JdbcTemplate jdbc = gestor.getJdbcTemplate(year);
+
+        if (jdbc == null) {
+            for (int row : rows) {
+                Map<String, Object> fila = request.data.get(row);
+                int slot = row * columns;
                 for (String col : columnMapping.keySet()) {
                     String indicator = columnMapping.get(col);
-                    results.add(new UpdateResult(
+                    request.publish(slot++, new UpdateResult(
                             year, col, indicator, fila.get(col),
                             false, 0,
                             "Sin conexión a la base de datos para el año " + year
                     ));
                 }
-                continue;
             }
+            return;
+        }
 
-            //  2. Obtener el coding del proceso
-            String processCoding = obtenerCodingProceso(jdbc, processId);
-            if (processCoding == null || processCoding.trim().isEmpty()) {
+        //  Obtener el coding del proceso y de los indicadores mapeados
+        String processCoding = codingCache.getProcessCoding(year, jdbc, request.processId);
+        if (processCoding == null || processCoding.trim().isEmpty()) {
+            for (int row : rows) {
+                Map<String, Object> fila = request.data.get(row);
+                int slot = row * columns;
                 for (String col : columnMapping.keySet()) {
                     String indicator = columnMapping.get(col);
-                    results.add(new UpdateResult(
+                    request.publish(slot++, new UpdateResult(
                             year, col, indicator, fila.get(col),
                             false, 0,
-                            "Proceso no encontrado para ID: " + processId
+                            "Proceso no encontrado para ID: " + request.processId
                     ));
                 }
-                continue;
             }
+            return;
+        }
+        Map<String, String> indicatorCodings = codingCache.getIndicatorCodings(year, jdbc, new HashSet<>(columnMapping.values()));
+        Set<String> instances = prevalidate ? loadInstanceKeys(jdbc, processCoding) : null;  // null = sin comprobar
+
+        // En una recarga grande se acumulan todas las celdas del año para aplicarlas de una vez con tabla temporal;
+        // si el año es todo o nada, también, para aplicarlas en una única transacción
+        boolean staged = stagingThreshold > 0 && (long) rows.size() * columns >= stagingThreshold;
+        boolean wholeYear = staged || request.allOrNothing;
+        boolean rejected = false;  // alguna celda del año no se puede aplicar
+        List<PendingUpdate> pending = new ArrayList<>();
+        for (int row : rows) {
+            Map<String, Object> fila = request.data.get(row);
+            int slot = row * columns;
 
-            //  3. Procesar columnas mapeadas
+            //  Procesar columnas mapeadas
             for (Map.Entry<String, String> entry : columnMapping.entrySet()) {
+                int resultIndex = slot++;
                 String fileColumn = entry.getKey();
                 String indicatorName = entry.getValue();
                 Object value = fila.get(fileColumn);
 
-                String indicatorCoding = obtenerCodingIndicator(jdbc, indicatorName);
+                String indicatorCoding = indicatorCodings.get(indicatorName);
                 if (indicatorCoding == null || indicatorCoding.trim().isEmpty()) {
 
-                    results.add(new UpdateResult(
+                    request.publish(resultIndex, new UpdateResult(
                             year, fileColumn, indicatorName, value,
                             false, 0,
                             "Indicador no encontrado: " + indicatorName
                     ));
+                    rejected = true;
                     continue;
                 }
                 String composite=null;
-                if(attribute==null ||AttributeValueColumn == null || AttributeValueColumn.trim().isEmpty()) {
+                if (request.attributeValueColumn == null || request.attributeValueColumn.trim().isEmpty()) {
                    composite = processCoding + "-" + indicatorCoding;
                 }
                 else {
-                    //  4. Obtener el valor del atributo desde la columna seleccionada
-                    String rawPossibleValue = (String) fila.get(AttributeValueColumn);
+                    //  Obtener el valor del atributo desde la columna seleccionada
+                    String rawPossibleValue = (String) fila.get(request.attributeValueColumn);
                     if (rawPossibleValue == null || rawPossibleValue.trim().isEmpty()) {
-                        results.add(new UpdateResult(
+                        request.publish(resultIndex, new UpdateResult(
                                 year, fileColumn, indicatorName, value,
                                 false, 0,
-                                "Valor del atributo vacío en columna: " + AttributeValueColumn
+                                "Valor del atributo vacío en columna: " + request.attributeValueColumn
                         ));
+                        rejected = true;
                         continue;
                     }
-                    //  5. Construir el coding y hacer el UPDATE
-                    if( "YY-ZZ".equals(getAttributeCodingByID(attribute))) rawPossibleValue = transformValueYear(rawPossibleValue);
+                    //  Construir el coding y hacer el UPDATE
+                    if (request.yearAttribute) rawPossibleValue = transformValueYear(rawPossibleValue);
                     composite = processCoding + "-" + indicatorCoding + "[" + rawPossibleValue + "]";
                 }
-                try {
-                    int updated = jdbc.update(sql, value, date, indicatorName, composite);
-                    results.add(new UpdateResult(
+                if (instances != null && !instances.contains(instanceKey(indicatorName, composite))) {
+                    // No existe esa instancia de indicador: el UPDATE no actualizaría ninguna fila
+                    request.publish(resultIndex, new UpdateResult(
                             year, fileColumn, indicatorName, value,
-                            updated > 0, updated,
-                            updated > 0 ? null : "No se ha encontrado el indicador asociado al proceso y/o atributo seleccionado "
+                            false, 0, NOT_FOUND_MESSAGE
                     ));
+                    rejected = true;
+                    continue;
+                }
+                // Se encola el UPDATE en el lote del año junto con la posición de su resultado
+                pending.add(new PendingUpdate(resultIndex, year, fileColumn, indicatorName, value,
+                        new Object[]{value, request.date, indicatorName, composite}));
+                if (!wholeYear && pending.size() >= commitSize) {
+                    commitChunk(year, jdbc, pending, request);
+                    pending.clear();
+                }
+            }
+        }
+
+        // Enviar lo que haya quedado pendiente (o todas las celdas del año)
+        if (pending.isEmpty()) return;
+        if (request.allOrNothing) {
+            applyAllOrNothing(year, jdbc, pending, rejected, staged, request);
+        } else if (staged) {
+            commitStaged(year, jdbc, pending, request);
+        } else {
+            commitChunk(year, jdbc, pending, request);
+        }
+    }
+
+    /**
+     * Aplica un grupo de hasta 'app.update.commit-size' UPDATE en una transacción y publica sus resultados tras el commit.
+     * Si la transacción no se puede confirmar ni con reintentos, todas sus celdas se informan con el error.
+     * @param year año academico de la bbdd
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param chunk actualizaciones de la transacción
+     * @param request petición de actualización, donde se publica el resultado de cada celda
+     */
+    private void commitChunk(String year, JdbcTemplate jdbc, List<PendingUpdate> chunk, UpdateRequest request) {
+        List<UpdateResult> results;
+        try {
+            results = inTransaction(year, jdbc, status -> executeBatches(jdbc, chunk));
+        } catch (DataAccessException e) {
+            results = failAll(chunk, e.getMessage());
+        }
+        publishAll(request, chunk, results);
+    }
+
+    /**
+     * Aplica todas las actualizaciones de un año con la tabla temporal, en una transacción.
+     * <p> Si falla la tabla temporal (por ejemplo, por un valor que no admite la columna), se repite en transacciones
+     * de 'app.update.commit-size' para poder informar del error de cada celda.
+     * @param year año academico de la bbdd
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param pending actualizaciones del año
+     * @param request petición de actualización, donde se publica el resultado de cada celda
+     */
+    private void commitStaged(String year, JdbcTemplate jdbc, List<PendingUpdate> pending, UpdateRequest request) {
+        List<UpdateResult> results;
+        try {
+            results = inTransaction(year, jdbc, status -> executeStaged(jdbc, pending));
+        } catch (DataAccessException e) {
+            log.warn("Error al actualizar {} con tabla temporal, se repite por lotes: {}", year, e.getMessage());
+            for (int from = 0; from < pending.size(); from += commitSize) {
+                commitChunk(year, jdbc, pending.subList(from, Math.min(pending.size(), from + commitSize)), request);
+            }
+            return;
+        }
+        publishAll(request, pending, results);
+    }
+
+    /**
+     * Aplica todas las actualizaciones de un año en una única transacción, que se revierte si alguna celda falla.
+     * <p> Si alguna celda ya se ha descartado antes de enviar nada (indicador, atributo o instancia inexistente),
+     * el año no se puede aplicar completo y no se envía ningún UPDATE.
+     * @param year año academico de la bbdd
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param pending actualizaciones del año
+     * @param rejected si alguna celda del año ya se ha descartado
+     * @param staged si se usa la tabla temporal
+     * @param request petición de actualización, donde se publica el resultado de cada celda
+     */
+    private void applyAllOrNothing(String year, JdbcTemplate jdbc, List<PendingUpdate> pending, boolean rejected,
+                                   boolean staged, UpdateRequest request) {
+        if (rejected) {
+            publishAll(request, pending, notApplied(pending, null));
+            return;
+        }
+        List<UpdateResult> results;
+        try {
+            results = inTransaction(year, jdbc, allOrNothing(jdbc, pending, staged));
+        } catch (DataAccessException e) {
+            if (!staged) {
+                publishAll(request, pending, failAll(pending, e.getMessage()));
+                return;
+            }
+            log.warn("Error al actualizar {} con tabla temporal, se repite por lotes: {}", year, e.getMessage());
+            try {
+                results = inTransaction(year, jdbc, allOrNothing(jdbc, pending, false));
+            } catch (DataAccessException batchEx) {
+                publishAll(request, pending, failAll(pending, batchEx.getMessage()));
+                return;
+            }
+        }
+        if (results.stream().anyMatch(r -> !r.isSuccess())) {
+            // El año se ha revertido: las celdas correctas tampoco se han aplicado
+            results = notApplied(pending, results);
+        }
+        publishAll(request, pending, results);
+    }
+
+    /**
+     * Trabajo de una transacción todo o nada: la marca para revertir si alguna celda falla.
+     */
+    private TransactionCallback<List<UpdateResult>> allOrNothing(JdbcTemplate jdbc, List<PendingUpdate> pending, boolean staged) {
+        return status -> {
+            List<UpdateResult> results = staged ? executeStaged(jdbc, pending) : executeBatches(jdbc, pending);
+            if (results.stream().anyMatch(r -> !r.isSuccess())) status.setRollbackOnly();
+            return results;
+        };
+    }
+
+    /**
+     * Ejecuta un trabajo en una transacción de la bbdd de un año, repitiéndolo si falla por interbloqueo
+     * o por agotar la espera de un bloqueo (MySQL revierte entonces la transacción completa).
+     * @param year año academico de la bbdd
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param work trabajo de la transacción
+     * @return resultado del trabajo, una vez confirmada (o revertida) la transacción
+     * @throws DataAccessException si falla, o si sigue fallando por bloqueos tras 'app.update.retry.max-attempts' intentos
+     */
+    private List<UpdateResult> inTransaction(String year, JdbcTemplate jdbc, TransactionCallback<List<UpdateResult>> work) {
+        TransactionTemplate tx = transactions.computeIfAbsent(year,
+                y -> new TransactionTemplate(new DataSourceTransactionManager(jdbc.getDataSource())));
+        Timer timer = Timer.builder("update.transaction").tag("year", year).register(registry);
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                return tx.execute(work);
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= retryAttempts) throw e;
+                lockRetries.increment();
+                long wait = retryBackoffMillis << (attempt - 1);
+                wait += ThreadLocalRandom.current().nextLong(wait / 2 + 1);  // para que los años en conflicto no coincidan
+                log.warn("Transacción de {} fallida por bloqueo (intento {}), se repite en {} ms: {}",
+                        year, attempt, wait, e.getMessage());
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta actualizaciones en lotes de como máximo 'app.update.batch-size' sentencias.
+     * @return resultado de cada actualización, en el mismo orden
+     */
+    private List<UpdateResult> executeBatches(JdbcTemplate jdbc, List<PendingUpdate> pending) {
+        List<UpdateResult> results = new ArrayList<>(pending.size());
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            results.addAll(executeBatch(jdbc, pending.subList(from, Math.min(pending.size(), from + batchSize))));
+        }
+        return results;
+    }
+
+    private static void publishAll(UpdateRequest request, List<PendingUpdate> pending, List<UpdateResult> results) {
+        for (int i = 0; i < pending.size(); i++) {
+            request.publish(pending.get(i).resultIndex, results.get(i));
+        }
+    }
+
+    private static List<UpdateResult> failAll(List<PendingUpdate> pending, String message) {
+        List<UpdateResult> results = new ArrayList<>(pending.size());
+        for (PendingUpdate p : pending) {
+            results.add(new UpdateResult(p.year, p.column, p.indicator, p.value, false, 0, message));
+        }
+        return results;
+    }
+
+    /**
+     * Resultados de un año todo o nada que no se ha aplicado: las celdas que fallaron conservan su error
+     * y el resto se informa como no aplicada.
+     * @param pending actualizaciones del año
+     * @param results resultados obtenidos antes de revertir, o {@code null} si no se ha enviado nada
+     * @return resultados de las celdas
+     */
+    private static List<UpdateResult> notApplied(List<PendingUpdate> pending, List<UpdateResult> results) {
+        List<UpdateResult> reverted = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            PendingUpdate p = pending.get(i);
+            UpdateResult result = results == null ? null : results.get(i);
+            reverted.add(result != null && !result.isSuccess() ? result : new UpdateResult(
+                    p.year, p.column, p.indicator, p.value, false, 0,
+                    "No aplicado: otras celdas del año " + p.year + " no se han podido actualizar"
+            ));
+        }
+        return reverted;
+    }
+
+    /**
+     * Ejecuta las tareas de actualización de cada año. Si solo hay una, o el paralelismo es 1,
+     * se ejecutan en el hilo actual; si no, en el ejecutor de actualizaciones.
+     * @param tasks tareas a ejecutar
+     */
+    private void runAll(List<Callable<Void>> tasks) {
+        try {
+            if (tasks.size() == 1 || updateExecutor == null) {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+                return;
+            }
+            List<Callable<Void>> propagated = new ArrayList<>(tasks.size());
+            for (Callable<Void> task : tasks) {
+                propagated.add(LogContext.propagate(task));
+            }
+            for (Future<Void> future : updateExecutor.invokeAll(propagated)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Actualización interrumpida", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Detiene el ejecutor de actualizaciones al cerrar la aplicación.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (updateExecutor != null) {
+            updateExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Ejecuta un lote de UPDATE contra la base de datos de un año.
+     * <p> Si el lote completo falla, se repite sentencia a sentencia para poder informar del error de cada celda.
+     * Los interbloqueos y esperas de bloqueo agotadas no se tratan como error de una celda: MySQL ha revertido
+     * la transacción, así que se propagan para repetirla entera.
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param pending actualizaciones del lote
+     * @return resultado de cada sentencia, en el mismo orden
+     */
+    private List<UpdateResult> executeBatch(JdbcTemplate jdbc, List<PendingUpdate> pending) {
+        List<Object[]> batchArgs = new ArrayList<>(pending.size());
+        for (PendingUpdate p : pending) {
+            batchArgs.add(p.args);
+        }
+        List<UpdateResult> results = new ArrayList<>(pending.size());
+        try {
+            int[] counts = jdbc.batchUpdate(UPDATE_SQL, batchArgs);
+            for (int i = 0; i < pending.size(); i++) {
+                results.add(toUpdateResult(pending.get(i), i < counts.length ? counts[i] : 0));
+            }
+        } catch (PessimisticLockingFailureException lockEx) {
+            throw lockEx;
+        } catch (DataAccessException batchEx) {
+            for (PendingUpdate p : pending) {
+                try {
+                    results.add(toUpdateResult(p, jdbc.update(UPDATE_SQL, p.args)));
+                } catch (PessimisticLockingFailureException lockEx) {
+                    throw lockEx;
                 } catch (Exception ex) {
                     results.add(new UpdateResult(
-                            year, fileColumn, indicatorName, value,
+                            p.year, p.column, p.indicator, p.value,
                             false, 0, ex.getMessage()
                     ));
                 }
             }
         }
+        return results;
+    }
+
+    /**
+     * Aplica todas las actualizaciones de un año con una tabla temporal.
+     * <p> Si varias celdas actualizan el mismo indicador (mismo nombre y código), solo se carga la última, que es
+     * la que prevalecería al ejecutar los UPDATE en orden; todas reciben el número de filas que encuentra esa clave.
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param pending actualizaciones del año
+     * @return resultado de cada actualización, en el mismo orden
+     * @throws DataAccessException si falla la tabla temporal
+     */
+    private List<UpdateResult> executeStaged(JdbcTemplate jdbc, List<PendingUpdate> pending) {
+        Map<String, Integer> lastByKey = new HashMap<>();  // indicador + código → posición de la última celda
+        for (int i = 0; i < pending.size(); i++) {
+            lastByKey.put(stagingKey(pending.get(i)), i);
+        }
+        List<PendingUpdate> staged = new ArrayList<>(lastByKey.size());
+        Map<String, Integer> stagedIndex = new HashMap<>();  // indicador + código → posición en 'staged'
+        for (int i = 0; i < pending.size(); i++) {
+            String key = stagingKey(pending.get(i));
+            if (lastByKey.get(key) == i) {
+                stagedIndex.put(key, staged.size());
+                staged.add(pending.get(i));
+            }
+        }
 
+        // posición en 'staged' → filas de indicator_instance que encuentra
+        Map<Integer, Integer> matched = jdbc.execute((ConnectionCallback<Map<Integer, Integer>>) con -> applyStaged(con, staged));
+        List<UpdateResult> results = new ArrayList<>(pending.size());
+        for (PendingUpdate p : pending) {
+            results.add(toUpdateResult(p, matched.getOrDefault(stagedIndex.get(stagingKey(p)), 0)));
+        }
         return results;
     }
 
     /**
-     * Recupera el código de un atributo cuyo id es 'id'.
-     * @param id identificador del atributo
-     * @return código del atributo
+     * Crea la tabla temporal en la conexión, la carga con INSERT de hasta 'batchSize' filas, cuenta las filas
+     * de indicator_instance que encuentra cada una y aplica el UPDATE ... JOIN. La tabla se borra al terminar,
+     * ya que la conexión vuelve al pool.
+     * @param con conexión de la bbdd del año
+     * @param staged actualizaciones a aplicar (sin claves repetidas)
+     * @return Un mapa con la posición de cada actualización que encuentra su indicador y el número de filas encontradas.
+     * @throws SQLException excepcion
      */
-    private String getAttributeCodingByID(String id) {
-        String sql = "SELECT coding FROM attribute WHERE id = ?";
-        return defaultJdbcTemplate.queryForObject(sql, new Object[]{id}, String.class);
+    private Map<Integer, Integer> applyStaged(Connection con, List<PendingUpdate> staged) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("DROP TEMPORARY TABLE IF EXISTS " + STAGING_TABLE);
+            st.execute(CREATE_STAGING_SQL);
+            try {
+                for (int from = 0; from < staged.size(); from += batchSize) {
+                    int to = Math.min(staged.size(), from + batchSize);
+                    StringBuilder sql = new StringBuilder(INSERT_STAGING_SQL);
+                    for (int i = from; i < to; i++) {
+                        sql.append(i == from ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+                    }
+                    try (PreparedStatement insert = con.prepareStatement(sql.toString())) {
+                        int param = 1;
+                        for (int i = from; i < to; i++) {
+                            insert.setInt(param++, i);
+                            for (Object arg : staged.get(i).args) {  // field, modified_date, indicator_name, coding
+                                insert.setObject(param++, arg);
+                            }
+                        }
+                        insert.executeUpdate();
+                    }
+                }
+
+                Map<Integer, Integer> matched = new HashMap<>();
+                try (ResultSet rs = st.executeQuery(MATCHED_STAGING_SQL)) {
+                    while (rs.next()) {
+                        matched.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+                st.executeUpdate(UPDATE_FROM_STAGING_SQL);
+                return matched;
+            } finally {
+                st.execute("DROP TEMPORARY TABLE IF EXISTS " + STAGING_TABLE);
+            }
+        }
+    }
+
+    private static String stagingKey(PendingUpdate p) {
+        return p.args[2] + "\0" + p.args[3];  // indicator_name, coding
     }
 
     /**
-     * Recupera el código de un proceso cuyo id es 'id'.
-     * @param jdbcTemplate plantilla de la bbdd del año academico
-     * @param processId identificador del proceso
-     * @return código del proceso
+     * Carga las instancias de indicador que existen para un proceso en la bbdd de un año.
+     * @param jdbc plantilla de la bbdd del año academico
+     * @param processCoding código del proceso
+     * @return claves ({@link #instanceKey}) de las instancias existentes, o {@code null} si no se han podido consultar
+     * (en ese caso no se descarta ninguna celda)
      */
-    private String obtenerCodingProceso(JdbcTemplate jdbcTemplate, String processId) {
-        String sql = "SELECT coding FROM process WHERE id = ?";
+    private Set<String> loadInstanceKeys(JdbcTemplate jdbc, String processCoding) {
+        String pattern = processCoding.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "-%";
+        Set<String> keys = new HashSet<>();
+        long start = System.nanoTime();
         try {
-            return jdbcTemplate.queryForObject(sql, new Object[]{processId}, String.class);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "";
+            jdbc.query(INSTANCES_SQL, rs -> {
+                keys.add(instanceKey(rs.getString(1), rs.getString(2)));
+            }, pattern);
+            return keys;
+        } catch (DataAccessException e) {
+            log.warn("No se pudieron cargar las instancias del proceso {}: {}", processCoding, e.getMessage());
+            return null;
+        } finally {
+            instancesLookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
     /**
-     *  Recupera el código de un indicador cuyo nombre es 'indicatorName'.
-     * @param jdbcTemplate plantilla de la bbdd del año academico
+     * Clave con la que se compara en memoria el par (indicator_name, coding) de una instancia.
+     * <p> MySQL compara las cadenas según la collation de la columna, normalmente sin distinguir mayúsculas ni tildes
+     * y sin tener en cuenta los espacios finales. La clave se normaliza de la misma forma ({@link Collation}),
+     * para no descartar nunca una celda que MySQL sí encontraría; las que coincidan de más se envían y MySQL decide.
      * @param indicatorName nombre del indicador
-     * @return código del indicador
+     * @param coding código compuesto
+     * @return clave normalizada
      */
-    private String obtenerCodingIndicator(JdbcTemplate jdbcTemplate, String indicatorName) {
-        String sql = "SELECT coding FROM indicator WHERE indicator_name = ?";
-        try {
-            return jdbcTemplate.queryForObject(sql, new Object[]{indicatorName}, String.class);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "";
+    private static String instanceKey(String indicatorName, String coding) {
+        return Collation.normalize(indicatorName) + "\0" + Collation.normalize(coding);
+    }
+
+    /**
+     * Construye el resultado de una celda a partir del número de filas que devolvió su UPDATE.
+     * <p> Con 'rewriteBatchedStatements' el driver puede devolver {@link Statement#SUCCESS_NO_INFO}:
+     * la sentencia se ejecutó pero no se conoce el número de filas, por lo que se considera correcta.
+     * @param p actualización ejecutada
+     * @param updated filas actualizadas
+     * @return resultado de la celda
+     */
+    private UpdateResult toUpdateResult(PendingUpdate p, int updated) {
+        boolean success = updated > 0 || updated == Statement.SUCCESS_NO_INFO;
+        return new UpdateResult(
+                p.year, p.column, p.indicator, p.value,
+                success, Math.max(updated, 0),
+                success ? null : NOT_FOUND_MESSAGE
+        );
+    }
+
+    /**
+     * Datos de una petición de actualización compartidos por las tareas de cada año.
+     */
+    private static final class UpdateRequest {
+        private final String processId;
+        private final Map<String, String> columnMapping;
+        private final List<Map<String, Object>> data;
+        private final Date date;
+        private final String attributeValueColumn;
+        private final boolean yearAttribute;          // el atributo tiene formato de año académico (YY-ZZ)
+        private final boolean allOrNothing;           // cada año se aplica completo o no se aplica
+        private final UpdateResult[] results;         // un resultado por fila y columna mapeada (null si solo se notifican)
+        private final Consumer<UpdateResult> listener; // recibe cada resultado en cuanto se conoce (puede ser null)
+        private final Counter succeeded;
+        private final Counter failed;
+
+        private UpdateRequest(String processId, Map<String, String> columnMapping, List<Map<String, Object>> data,
+                              Date date, String attributeValueColumn, boolean yearAttribute, boolean allOrNothing,
+                              boolean keepResults, Consumer<UpdateResult> listener, Counter succeeded, Counter failed) {
+            this.processId = processId;
+            this.columnMapping = columnMapping;
+            this.data = data;
+            this.date = date;
+            this.attributeValueColumn = attributeValueColumn;
+            this.yearAttribute = yearAttribute;
+            this.allOrNothing = allOrNothing;
+            this.results = keepResults ? new UpdateResult[data.size() * columnMapping.size()] : null;
+            this.listener = listener;
+            this.succeeded = succeeded;
+            this.failed = failed;
+        }
+
+        /**
+         * Guarda el resultado de una celda en su posición y se lo pasa al listener.
+         * Las tareas de distintos años lo llaman a la vez, por lo que el listener debe ser seguro entre hilos.
+         * @param index posición del resultado
+         * @param result resultado de la celda
+         */
+        private void publish(int index, UpdateResult result) {
+            (result.isSuccess() ? succeeded : failed).increment();
+            if (results != null) results[index] = result;
+            if (listener != null) listener.accept(result);
+        }
+    }
+
+    /**
+     * UPDATE pendiente de enviar en un lote, junto con la posición que ocupa su resultado.
+     */
+    private static final class PendingUpdate {
+        private final int resultIndex;
+        private final String year;
+        private final String column;
+        private final String indicator;
+        private final Object value;
+        private final Object[] args;
+
+        private PendingUpdate(int resultIndex, String year, String column, String indicator, Object value, Object[] args) {
+            this.resultIndex = resultIndex;
+            this.year = year;
+            this.column = column;
+            this.indicator = indicator;
+            this.value = value;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Datos de referencia memorizados junto con el instante en el que caducan.
+     */
+    private static final class CachedReference {
+        private final ReferenceData data;
+        private final long expiresAt;
+
+        private CachedReference(ReferenceData data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
         }
     }
 
@@ -250,7 +1069,7 @@ public class DatabaseService {
             if (fin < 100) fin += 2000; // ej. "21" → 2021
             return inicio + "_" + fin;
         } catch (Exception e) {
-            System.err.println("Error al convertir el año académico: " + valor);
+            log.debug("No se pudo convertir el año académico: {}", valor);
             return valor;
         }
     }
@@ -270,7 +1089,7 @@ public class DatabaseService {
             if (fin > 100) fin -= 2000; // ej. "2021" → 21
             return inicio + "-" + fin;
         } catch (Exception e) {
-            System.err.println("Error al convertir el año académico: " + valor);
+            log.debug("No se pudo convertir el año académico: {}", valor);
             return valor;
         }
     }
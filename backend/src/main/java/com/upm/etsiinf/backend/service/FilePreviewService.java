@@ -5,92 +5,288 @@ import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.exceptions.CsvValidationException;
+import com.upm.etsiinf.backend.model.HeaderDetection;
+import com.upm.etsiinf.backend.model.ParsedTable;
+import com.upm.etsiinf.backend.model.UploadStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Servicio que se encarga de leer el archivo.
+ * <p>
+ * Publica el tiempo de cada etapa de la lectura: copia a disco del archivo subido ('upload.receive'), lectura
+ * ('upload.parse', con la etiqueta 'type': csv, index o sheet) y detección de cabecera ('upload.header.detection').
+ * </p>
  */
 @Service
 public class FilePreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(FilePreviewService.class);
+
+    private final int previewRows;  // filas que se envían al frontend como previsualización
+    private final int maxPageRows;  // filas que se pueden pedir como máximo en una página
+    private final HeaderDetector headerDetector;
+    private final SheetExecutor sheetExecutor;    // lee en paralelo las hojas de los libros Excel
+
+    private final MeterRegistry registry;
+    private final Timer csvParse;
+    private final Timer excelIndex;
+    private final Timer sheetParse;
+    private final Timer streamingHeader;  // desde el inicio de la hoja hasta decidir su cabecera (.xlsx, SAX)
+    private final Timer workbookHeader;   // sobre una hoja ya cargada (.xls)
+
     /**
-     * Constructir por defecto.No realiza ninguna operación.
+     * Constructor de FilePreviewService
+     * @param meterRegistry registro de métricas (opcional)
+     * @param previewRows número de filas que se devuelven como previsualización (propiedad 'app.preview.rows')
+     * @param maxPageRows número máximo de filas por página (propiedad 'app.preview.max-rows')
+     * @param headerWindow filas del principio de cada hoja de Excel en las que se busca la cabecera (propiedad 'app.preview.header-window')
+     * @param sheetParallelism hojas de Excel que se leen a la vez como máximo (propiedad 'app.preview.sheet-parallelism';
+     *                         0 = número de procesadores, 1 = secuencial)
      */
-    public FilePreviewService() {
+    public FilePreviewService(ObjectProvider<MeterRegistry> meterRegistry,
+                              @Value("${app.preview.rows:200}") int previewRows,
+                              @Value("${app.preview.max-rows:1000}") int maxPageRows,
+                              @Value("${app.preview.header-window:200}") int headerWindow,
+                              @Value("${app.preview.sheet-parallelism:0}") int sheetParallelism) {
+        this.previewRows = previewRows;
+        this.maxPageRows = Math.max(1, maxPageRows);
+        this.headerDetector = new HeaderDetector(headerWindow);
+        this.sheetExecutor = new SheetExecutor(sheetParallelism);
+
+        this.registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.csvParse = Timer.builder("upload.parse").tag("type", "csv").register(registry);
+        this.excelIndex = Timer.builder("upload.parse").tag("type", "index").register(registry);
+        this.sheetParse = Timer.builder("upload.parse").tag("type", "sheet").register(registry);
+        this.streamingHeader = Timer.builder("upload.header.detection").tag("reader", "streaming").register(registry);
+        this.workbookHeader = Timer.builder("upload.header.detection").tag("reader", "workbook").register(registry);
+    }
 
+    /**
+     * Copia a un fichero temporal un archivo subido, para leerlo desde disco.
+     * <p> Mide el tiempo de la copia ('upload.receive'); quien lo pide debe borrar el fichero.
+     * @param file archivo subido; su nombre debe tener extensión
+     * @return fichero temporal, con la misma extensión que el archivo
+     * @throws IOException si no se puede copiar (el fichero temporal se borra)
+     */
+    public Path receive(MultipartFile file) throws IOException {
+        String fileName = file.getOriginalFilename();
+        String suffix = fileName.substring(fileName.lastIndexOf('.'));
+        Path tmp = Files.createTempFile("upload-", suffix);
+        long start = System.nanoTime();
+        try {
+            file.transferTo(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        } finally {
+            Timer.builder("upload.receive").tag("format", suffix.substring(1).toLowerCase())
+                    .register(registry).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return tmp;
     }
 
     /**
-     * Previsualiza el contenido de un archivo CSV subido por el usuario.
+     * Lee el contenido de un archivo CSV subido por el usuario.
      *  <p>
-     *  Lee las  filas del archivo y devuelve su contenido como una lista de mapas, donde cada mapa representa una fila del CSV
-     *  con sus pares clave-valor (nombre de columna → valor de celda).
+     *  Las filas se leen de una en una y se añaden directamente a una tabla por columnas ({@link ParsedTable}),
+     *  sin crear un mapa por fila, de modo que el archivo solo se recorre una vez.
      * @param file atchivo a previsualizar
-     * @return  Lista de mapas representando las filas del archivo.
+     * @return  Tabla con las filas del archivo.
      * @throws IOException excepcion
      */
-    public List<Map<String, String>> previsualizeCSV(MultipartFile file) throws IOException {
-        List<Map<String, String>> rows = new ArrayList<>();
+    public ParsedTable previsualizeCSV(MultipartFile file) throws IOException {
+        return readCSV(file.getInputStream(), null);
+    }
+
+    /**
+     * Lee el contenido de un archivo CSV, informando del progreso si se indica un estado de subida.
+     * @param in contenido del archivo (se cierra al terminar)
+     * @param progress estado en el que se cuentan las filas leídas, o {@code null}
+     * @return  Tabla con las filas del archivo.
+     * @throws IOException excepcion
+     */
+    public ParsedTable readCSV(InputStream in, UploadStatus progress) throws IOException {
+        return timed(csvParse, () -> parseCSV(in, progress));
+    }
+
+    private ParsedTable parseCSV(InputStream in, UploadStatus progress) throws IOException {
         CSVParser parser = new CSVParserBuilder().withSeparator(';').build();
-        try (InputStreamReader isr = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8); //lector de caracteres de archivo
+        try (InputStreamReader isr = new InputStreamReader(in, StandardCharsets.UTF_8); //lector de caracteres de archivo
              CSVReader reader = new CSVReaderBuilder(isr).withCSVParser(parser).build()) { //lector de csv
             // Leer cabecera
             String[] headersLine = reader.readNext();
             if (headersLine == null) {
-                return rows; // CSV vacío
+                return new ParsedTable(new ArrayList<>()); // CSV vacío
             }
             List<String> headers = new ArrayList<>(); // lista con los encabezados
             for (String header : headersLine) {
                 headers.add(header.trim());
             }
+            ParsedTable table = new ParsedTable(headers);
 
             // Leer filas
             String[] values;
             while ((values = reader.readNext()) != null) {
-                Map<String, String> rowMap = new LinkedHashMap<>();
-                for (int i = 0; i < headers.size(); i++) {
-                    String val = i < values.length ? values[i] : "";
-                    rowMap.put(headers.get(i), val);
-                }
-                rows.add(rowMap);
+                table.addRow(values);
+                if (progress != null) progress.rowParsed();
             }
+            table.trimToSize();
+            return table;
         } catch (CsvValidationException e) {
             throw new IOException("Error validando CSV", e);
         }
-        return rows;
     }
 
     /**
-     * Previsualiza todas las hojas de un archivo Excel con Apache POI.
+     * Devuelve las primeras filas de una tabla, que son las que se envían al frontend para previsualizarla.
+     * @param table tabla leída del archivo
+     * @return Lista de mapas con las primeras 'app.preview.rows' filas de la tabla.
+     */
+    public List<Map<String, String>> preview(ParsedTable table) {
+        return table.getRows(0, previewRows);
+    }
+
+    /**
+     * Devuelve una página de filas de una tabla con solo las columnas pedidas.
+     * <p> El tamaño de la respuesta no depende del tamaño del archivo: 'limit' se limita a 'app.preview.max-rows'.
+     * @param table tabla leída del archivo
+     * @param offset primera fila de la página
+     * @param limit filas de la página; si es {@code null}, las de la previsualización ('app.preview.rows')
+     * @param columns columnas a incluir, o {@code null} para incluirlas todas
+     * @return Lista de mapas con las filas de la página.
+     */
+    public List<Map<String, String>> page(ParsedTable table, int offset, Integer limit, Collection<String> columns) {
+        int rows = limit == null ? previewRows : Math.min(Math.max(0, limit), maxPageRows);
+        return table.getRows(offset, rows, columns);
+    }
+
+    /**
+     * Indexa las hojas de un archivo Excel guardado en disco sin leer sus filas de datos.
      * <p>
-     * Para cada hoja, se construye una lista de mapas, donde cada mapa representa una fila del Excel
-     * como pares clave-valor (nombre de columna → valor de celda).
-     * @param file archivo a previsualizar
-     * @return Un mapa donde cada clave es el nombre de una hoja, y su valor es la lista de filas representadas como mapas.
+     * De cada hoja solo se detecta la fila de cabecera y se comprueba que haya al menos una fila con datos, de modo
+     * que el coste no depende del tamaño de las hojas. Las filas se leen después, hoja a hoja, con {@link #readExcelSheet}.
+     * Los .xlsx se recorren con SAX y la lectura de cada hoja se detiene en su primera fila de datos; los .xls
+     * tienen que cargarse enteros con {@code WorkbookFactory}.
+     * @param file archivo Excel
+     * @param progress estado en el que se cuentan las hojas encontradas, o {@code null}
+     * @return Un mapa, en el orden del libro, donde cada clave es el nombre de una hoja válida y su valor la fila de cabecera.
      * @throws IOException excepcion
      */
-    public Map<String, List<Map<String, String>>> previsualizeExcelAllSheets(MultipartFile file) throws IOException {
-        Map<String, List<Map<String, String>>> sheetsData = new LinkedHashMap<>();
-        try (Workbook wb = WorkbookFactory.create(file.getInputStream())) {
+    public Map<String, Integer> indexExcel(Path file, UploadStatus progress) throws IOException {
+        return timed(excelIndex, () -> indexWorkbook(file, progress));
+    }
+
+    private Map<String, Integer> indexWorkbook(Path file, UploadStatus progress) throws IOException {
+        Map<String, Integer> headerRows = new LinkedHashMap<>();
+        if (FileMagic.valueOf(file.toFile()) == FileMagic.OOXML) {
+            Map<String, HeaderDetection> headers = streamingReader().indexSheets(file, progress);
+            headers.forEach((name, header) -> headerRows.put(name, header.getRowIndex()));
+            return headerRows;
+        }
+        try (Workbook wb = WorkbookFactory.create(file.toFile(), null, true)) {
+            DataFormatter formatter = new DataFormatter();
             for (Sheet sheet : wb) {
-                try {
-                    List<Map<String, String>> sheetPreview = processSheet(sheet);
-                    sheetsData.put(sheet.getSheetName(), sheetPreview);
-                } catch (IllegalArgumentException e) {
-                    // Cabecera no encontrada, se ignora la hoja
-                    System.out.println("Hoja ignorada por falta de cabecera: " + sheet.getSheetName());
+                HeaderDetection header = detectHeader(sheet);
+                if (header.isFound() && hasDataRow(sheet, header.getRowIndex(), formatter)) {
+                    log.debug("Cabecera de la hoja {}: {}", sheet.getSheetName(), header);
+                    headerRows.put(sheet.getSheetName(), header.getRowIndex());
+                    if (progress != null) progress.sheetFound();
+                } else {
+                    log.debug("Hoja ignorada por falta de cabecera o de datos: {}", sheet.getSheetName());
                 }
             }
         }
-        return sheetsData;
+        return headerRows;
+    }
+
+    /**
+     * Lee las filas de una hoja de un archivo Excel indexado con {@link #indexExcel}.
+     * <p> En los .xlsx solo se recorre el XML de esa hoja; los .xls se cargan de nuevo enteros.
+     * @param file archivo Excel
+     * @param sheetName nombre de la hoja
+     * @param headerRow fila de cabecera de la hoja
+     * @return Tabla con las filas de la hoja, o {@code null} si el libro no tiene esa hoja.
+     * @throws IOException excepcion
+     */
+    public ParsedTable readExcelSheet(Path file, String sheetName, int headerRow) throws IOException {
+        return timed(sheetParse, () -> parseExcelSheet(file, sheetName, headerRow));
+    }
+
+    private ParsedTable parseExcelSheet(Path file, String sheetName, int headerRow) throws IOException {
+        if (FileMagic.valueOf(file.toFile()) == FileMagic.OOXML) {
+            return streamingReader().readSheet(file, sheetName, headerRow, null);
+        }
+        try (Workbook wb = WorkbookFactory.create(file.toFile(), null, true)) {
+            Sheet sheet = wb.getSheet(sheetName);
+            return sheet == null ? null : processSheet(sheet, headerRow);
+        }
+    }
+
+    private StreamingXlsxReader streamingReader() {
+        return new StreamingXlsxReader(headerDetector, sheetExecutor, streamingHeader);
+    }
+
+    /**
+     * Detecta la fila de cabecera de una hoja ya cargada, midiendo cuánto tarda.
+     */
+    private HeaderDetection detectHeader(Sheet sheet) {
+        long start = System.nanoTime();
+        try {
+            return headerDetector.detect(sheet);
+        } finally {
+            workbookHeader.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Ejecuta una lectura midiendo su duración, también si falla.
+     */
+    private static <T> T timed(Timer timer, Reading<T> reading) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return reading.read();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Lectura de un archivo que puede fallar con {@link IOException}.
+     */
+    @FunctionalInterface
+    private interface Reading<T> {
+        T read() throws IOException;
+    }
+
+    /**
+     * Detiene el ejecutor de lectura de hojas al cerrar la aplicación.
+     */
+    @PreDestroy
+    public void shutdown() {
+        sheetExecutor.shutdown();
     }
 
     /**
@@ -98,26 +294,20 @@ public class FilePreviewService {
      * @param sheetData hoja a comprobar
      * @return  {@code true} si es una hoja válida; {@code false} en caso contrario.
      */
-    public static boolean isValidSheet(List<Map<String, String>> sheetData) {
+    public static boolean isValidSheet(ParsedTable sheetData) {
         // Es válida si tiene al menos una fila de datos
         return sheetData != null && !sheetData.isEmpty();
     }
 
     /**
-     * Lee una hoja de excel.
-     * Para cada fila guarda en un mapanpares clave-valor (nombre de columna → valor de celda).
-     * @param sheet hoja a comprobar
-     * @return Lista de mapas representando las filas del archivo.
+     * Lee una hoja de excel cuya fila de cabecera ya se conoce.
+     * @param sheet hoja a leer
+     * @param headerRowIndex fila de cabecera
+     * @return Tabla con las filas de la hoja.
      */
-    private List<Map<String, String>> processSheet(Sheet sheet) {
-        List<Map<String, String>> data = new ArrayList<>();
+    private ParsedTable processSheet(Sheet sheet, int headerRowIndex) {
         DataFormatter formatter = new DataFormatter();
 
-        int headerRowIndex = detectHeader(sheet);
-        if (headerRowIndex < 0) {
-            throw new IllegalArgumentException("No se encontró fila de encabezado en hoja: " + sheet.getSheetName());
-        }
-
         // Obtener nombres de columna
         Row headerRow = sheet.getRow(headerRowIndex);
         List<String> headers = new ArrayList<>();
@@ -125,76 +315,42 @@ public class FilePreviewService {
             Cell cell = headerRow.getCell(i, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
             headers.add(formatter.formatCellValue(cell).trim());
         }
+        ParsedTable data = new ParsedTable(headers);
 
         // Leer filas de datos
         for (int r = headerRowIndex + 1; r <= sheet.getLastRowNum(); r++) {
             Row row = sheet.getRow(r);
             if (row == null) continue;
-            Map<String, String> rowData = new LinkedHashMap<>();
+            String[] rowData = new String[headers.size()];
             boolean anyValue = false;
             for (int c = 0; c < headers.size(); c++) {
-                Cell cell = row.getCell(c, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                String value = formatter.formatCellValue(cell).trim();
+                Cell cell = row.getCell(c);  // null si la celda no existe, sin crear una vacía
+                String value = cell == null ? "" : formatter.formatCellValue(cell).trim();
                 if (!value.isEmpty()) anyValue = true;
-                rowData.put(headers.get(c), value);
+                rowData[c] = value;
             }
-            if (anyValue) data.add(rowData);
+            if (anyValue) data.addRow(rowData);
         }
+        data.trimToSize();
         return data;
     }
 
     /**
-     * Busca la fila donde empieza el encabezado del excel, ya que estos suelen traer información y/o isntrucciones antes.
-     * <p> compara cada fila con la siguiente, evaluando si la fila actual podría representar un encabezado y si la siguiente contiene datos
-     * @param sheet hoja del archivo
-     * @return Indice de la fila que contiene los encabezados.
-     */
-    private int detectHeader(Sheet sheet) {
-        int maxCols = 0;
-        for (int i = 0; i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
-            if (row != null) {
-                maxCols = Math.max(maxCols, row.getLastCellNum()); //compara una fila con la siguiente
-            }
-        }
-        for (int i = 0; i < sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
-            Row next = sheet.getRow(i + 1);
-            if (row != null && next != null && isValidHeaderRow(row, next, maxCols)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    /**
-     * Verifica que una fila es un encabezado.
-     * <p> La fila de encabezados contiene más textos y la fila que le sigue más datos.
-     * @param row fila candidata
-     * @param nextRow siguiente fila
-     * @param cols numero maximo de columnas que tienen las filas
-     * @return {@code true} si es uuna fila de encabezado válida {@code false} en caso contrario.
+     * Comprueba si una hoja tiene, después de la cabecera, alguna fila con valor en las columnas de la cabecera.
+     * @param sheet hoja a comprobar
+     * @param headerRowIndex fila de cabecera
+     * @param formatter formateador de celdas
+     * @return {@code true} si hay al menos una fila de datos
      */
-    private boolean isValidHeaderRow(Row row, Row nextRow, int cols) {
-        int textCount = 0, numCount = 0;
-        for (int c = 0; c < cols; c++) {
-            Cell cell = row.getCell(c, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-            if (cell.getCellType() == CellType.STRING && !cell.getStringCellValue().trim().isEmpty()) {
-                textCount++;
-            } else if (cell.getCellType() == CellType.NUMERIC) {
-                numCount++;
-            }
-        }
-        int nextText = 0, nextNum = 0;
-        for (int c = 0; c < cols; c++) {
-            Cell cell = nextRow.getCell(c, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-            if (cell.getCellType() == CellType.STRING && !cell.getStringCellValue().trim().isEmpty()) {
-                nextText++;
-            } else if (cell.getCellType() == CellType.NUMERIC) {
-                nextNum++;
+    private static boolean hasDataRow(Sheet sheet, int headerRowIndex, DataFormatter formatter) {
+        int width = sheet.getRow(headerRowIndex).getLastCellNum();
+        for (int r = headerRowIndex + 1; r <= sheet.getLastRowNum(); r++) {
+            Row row = sheet.getRow(r);
+            if (row == null) continue;
+            for (Cell cell : row) {  // solo las celdas que existen
+                if (cell.getColumnIndex() < width && !formatter.formatCellValue(cell).trim().isEmpty()) return true;
             }
         }
-        return textCount > 1 && textCount >= numCount && nextNum >= nextText; // Si la fila candidata a encabezado tiene al menos dos celdas con texto, y tiene mas celdas de texto que datos númericos
-                                                                              // la fila siguiente contiene más datos númericos que descriptivos
+        return false;
     }
 }
@@ -1,31 +1,67 @@
 package com.upm.etsiinf.backend.service;
 
+import com.upm.etsiinf.backend.model.ParsedTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 /**
  * Servicio que se encarga de aplicar el mapeo de las columnas y prepara los datos para enviarlos a la base de datos.
+ * <p> El tiempo de cada filtrado se publica como 'update.filter' (etiqueta 'source': table o rows).
  */
 @Service
 public class FileProcessingService {
+
+    private final Timer tableFilter;
+    private final Timer rowsFilter;
+
     /**
-     * Constructir por defecto.No realiza ninguna operación.
+     * Constructor de FileProcessingService
+     * @param meterRegistry registro de métricas (opcional)
      */
-    public FileProcessingService(){
-
+    public FileProcessingService(ObjectProvider<MeterRegistry> meterRegistry){
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.tableFilter = Timer.builder("update.filter").tag("source", "table").register(registry);
+        this.rowsFilter = Timer.builder("update.filter").tag("source", "rows").register(registry);
     }
 
     /**
      * Método auxiliar que filtra la lista de filas preprocesadas,
      * conservando únicamente las columnas indicadas en el mapeo y la que contiene los años académicos (necesaria para la conexión a la base de data).
+     * <p> No se copia nada: las columnas se resuelven una vez a posiciones de la tabla y se devuelve una vista
+     * de solo lectura ({@link ParsedTable#project}) cuyas filas leen directamente de la tabla guardada.
      * @param data informacion guardada del archivo
      * @param columnMapping columnas mapeadas por el usuario
      * @param academicYearColumn  columna con los años academicos
      * @return lista de mapas con  pares clave-valor (nombre de columna → valor de celda).
      */
-    public List<Map<String, Object>> dataFilter(List<Map<String, String>> data, Map<String, String> columnMapping, String academicYearColumn) {
+    public List<Map<String, Object>> dataFilter(ParsedTable data, Map<String, String> columnMapping, String academicYearColumn) {
+        long start = System.nanoTime();
+        Set<String> columns = new HashSet<>(columnMapping.keySet());
+        columns.add(academicYearColumn);
+        List<Map<String, Object>> projection = data.project(columns);
+        tableFilter.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return projection;
+    }
+
+    /**
+     * Igual que {@link #dataFilter(ParsedTable, Map, String)} para cualquier recorrido de filas: como no se pueden
+     * resolver las columnas de antemano, se copia cada fila a un mapa nuevo con las columnas que se conservan.
+     * @param data filas del archivo
+     * @param columnMapping columnas mapeadas por el usuario
+     * @param academicYearColumn  columna con los años academicos
+     * @return lista de mapas con  pares clave-valor (nombre de columna → valor de celda).
+     */
+    public List<Map<String, Object>> dataFilter(Iterable<? extends Map<String, String>> data, Map<String, String> columnMapping, String academicYearColumn) {
+        long start = System.nanoTime();
         List<Map<String, Object>> resultado = new ArrayList<>();
 
         for (Map<String, String> fila : data) {
@@ -38,6 +74,7 @@ public class FileProcessingService {
             }
             resultado.add(filaFiltrada);
         }
+        rowsFilter.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         return resultado;
     }
 }
\ No newline at end of file
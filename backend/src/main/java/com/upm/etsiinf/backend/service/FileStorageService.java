@@ -1,57 +1,553 @@
 package com.upm.etsiinf.backend.service;
 
+import com.upm.etsiinf.backend.model.ParsedTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Servicio que se encarga de alamcenar los datos del archivo subido.
+ * <p>
+ * Cada archivo se escribe al guardarlo en el almacén persistente ({@link UploadStore}), compartido por todas las
+ * instancias, y se conserva además en memoria con un presupuesto máximo de bytes ('app.storage.max-bytes').
+ * Cuando se supera, o cuando un archivo lleva más de 'app.storage.idle-ttl-minutes' sin usarse, se quita de memoria
+ * el menos usado recientemente; la próxima vez que se pida (en esta u otra instancia, también tras reiniciar)
+ * se carga del almacén. Del almacén se eliminan los archivos sin usar durante 'app.storage.retention-hours';
+ * los que se leen de memoria se marcan como usados en el almacén como mucho una vez cada {@code TOUCH_INTERVAL_MILLIS}.
+ * Publica métricas de aciertos, fallos, desalojos y bytes ocupados ('upload.storage.*').
+ * </p>
+ * <p>
+ * Es seguro usarlo desde varios hilos a la vez: los archivos se guardan en un {@link ConcurrentHashMap},
+ * el alta es atómica (el id se reserva en el almacén, de modo que no se sobrescribe un id existente en ninguna instancia)
+ * y el desalojo solo quita un archivo si sigue siendo el mismo objeto.
+ * </p>
+ * <p>
+ * Los libros Excel se guardan indexados ({@link #saveExcelWorkbook}): el archivo original se conserva en el almacén
+ * junto con el nombre y la fila de cabecera de cada hoja válida, y las filas de una hoja solo se leen la primera vez
+ * que se piden. Cada hoja leída se guarda como una parte más del archivo en el almacén y como una entrada más en
+ * memoria (mismo presupuesto y desalojo que el resto), de modo que ninguna instancia la vuelve a leer del original.
+ * </p>
+ * <p>
+ * Las hojas se escriben en el almacén como instantáneas columnares ({@link TableSnapshot}) y en memoria se guardan
+ * proyectadas desde ese archivo: previsualizar, paginar o filtrar lee las celdas de la caché de páginas del sistema
+ * operativo y el heap solo contiene la cabecera de cada tabla. Si no se puede proyectar, se guarda la tabla leída.
+ * </p>
  */
 @Service
 public class FileStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
+
+    private static final String CSV_SHEET = "";  // un CSV (o una hoja leída de un libro) se guarda como una única hoja sin nombre
+    private static final String SHEET_KEY = "-sheet";  // sufijo de las entradas con las hojas leídas de un libro
+    private static final String MAIN_PART = "file";    // parte del almacén con el contenido del archivo (o el índice del libro)
+    private static final String SHEET_PART = "sheet";  // prefijo de las partes con las hojas leídas de un libro
+    private static final long PURGE_INTERVAL_MILLIS = 10 * 60_000;
+    private static final long TOUCH_INTERVAL_MILLIS = PURGE_INTERVAL_MILLIS;  // mucho menor que 'app.storage.retention-hours'
+
+    private final FilePreviewService previewService;
+    private final UploadStore store;
+    private final long maxBytes;
+    private final long idleTtlMillis;
+    private final long retentionMillis;
+    private final AtomicLong nextPurge = new AtomicLong();
+
+    private final ConcurrentHashMap<String, StoredFile> storage = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> sheetLocks = new ConcurrentHashMap<>();  // hojas que se están leyendo
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter diskHits;
+    private final Counter sizeEvictions;
+    private final Counter idleEvictions;
+
     /**
-     * Constructir por defecto.No realiza ninguna operación.
+     * Constructor de FileStorageService
+     * @param previewService servicio que lee las hojas de los libros Excel al pedirlas por primera vez
+     * @param store almacén persistente de los archivos subidos
+     * @param meterRegistry registro de métricas (opcional)
+     * @param maxBytes bytes máximos que pueden ocupar en memoria los archivos guardados
+     * @param idleTtlMinutes minutos sin uso tras los que se quita un archivo de memoria (0 = sin límite)
+     * @param retentionHours horas sin uso tras las que se elimina un archivo del almacén (0 = se conservan)
      */
-    public FileStorageService(){
+    public FileStorageService(FilePreviewService previewService, UploadStore store,
+                              ObjectProvider<MeterRegistry> meterRegistry,
+                              @Value("${app.storage.max-bytes:536870912}") long maxBytes,
+                              @Value("${app.storage.idle-ttl-minutes:120}") long idleTtlMinutes,
+                              @Value("${app.storage.retention-hours:24}") long retentionHours) {
+        this.previewService = previewService;
+        this.store = store;
+        this.maxBytes = maxBytes;
+        this.idleTtlMillis = idleTtlMinutes * 60_000;
+        this.retentionMillis = retentionHours * 3_600_000;
 
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.hits = Counter.builder("upload.storage.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("upload.storage.requests").tag("result", "miss").register(registry);
+        this.diskHits = Counter.builder("upload.storage.requests").tag("result", "disk").register(registry);
+        this.sizeEvictions = Counter.builder("upload.storage.evictions").tag("cause", "size").register(registry);
+        this.idleEvictions = Counter.builder("upload.storage.evictions").tag("cause", "idle").register(registry);
+        Gauge.builder("upload.storage.bytes", this, s -> s.storedBytes()).register(registry);
+        Gauge.builder("upload.storage.files", this, s -> s.storedFiles()).register(registry);
     }
 
-    private final Map<String, List<Map<String, String>>> storage = new HashMap<>();   // Almacenamiento para archivos CSV
-    private final Map<String, Map<String, List<Map<String, String>>>> excelStorage = new HashMap<>();  //Almacenamiento para archivos Excel con múltiples hojas
-
     /**
-     * Guarda los datos de un archivo tipo CSV (id, lista de mapas con pares (nombreColumna, valor)).
+     * Guarda los datos de un archivo tipo CSV (id, tabla por columnas), salvo que ya exista un archivo con ese id.
      * @param fileId identificador del archivo
-     * @param data lista de mapas con sus pares clave-valor (nombre de columna → valor de celda).
+     * @param data tabla con las filas del archivo
+     * @return {@code true} si se guardó; {@code false} si el id ya estaba en uso
+     * @throws IOException si no se puede escribir en el almacén
      */
-    public void saveCSVFile(String fileId, List<Map<String, String>> data) {
-        storage.put(fileId, data);
+    public boolean saveCSVFile(String fileId, ParsedTable data) throws IOException {
+        Map<String, ParsedTable> sheets = new LinkedHashMap<>();
+        sheets.put(CSV_SHEET, data);
+        return create(fileId, new StoredFile(Kind.CSV, sheets), null);
     }
 
     /**
      * Devuelve la información almacenada de un CVS a través de su identificador.
      * @param fileId  identificador del archivo
-     * @return lista de mapas con pares (nombreColumna, valor)
+     * @return tabla con las filas del archivo
      */
-    public List<Map<String, String>> getCSVFile(String fileId) {
-        return storage.get(fileId);
+    public ParsedTable getCSVFile(String fileId) {
+        StoredFile file = get(fileId);
+        return file != null && file.kind == Kind.CSV ? file.sheets.get(CSV_SHEET) : null;
     }
 
     /**
-     * Guarda los datos de un archivo excel. Un mapa donde cada clave es el nombre de una hoja, y su valor es la lista de filas representadas como mapas.
+     * Guarda un libro Excel indexado, salvo que ya exista un archivo con ese id.
+     * <p> El archivo original se mueve al almacén; sus hojas se leen al pedirlas con {@link #getTable}.
      * @param fileId identificador del archivo
-     * @param data Un mapa donde cada clave es el nombre de una hoja, y su valor es la lista de filas representadas como mapas.
+     * @param source archivo Excel en disco (se mueve; si no se guarda, se borra)
+     * @param headerRows Un mapa, en el orden del libro, donde cada clave es el nombre de una hoja válida y su valor la fila de cabecera.
+     * @return {@code true} si se guardó; {@code false} si el id ya estaba en uso
+     * @throws IOException si no se puede guardar el archivo original o su índice
      */
-    public void saveExcelFile(String fileId, Map<String, List<Map<String, String>>> data) {
-        excelStorage.put(fileId, data);
+    public boolean saveExcelWorkbook(String fileId, Path source, Map<String, Integer> headerRows) throws IOException {
+        try {
+            return create(fileId, new StoredFile(new LinkedHashMap<>(headerRows)), source);
+        } finally {
+            Files.deleteIfExists(source);  // si se ha guardado, ya se ha movido
+        }
     }
 
     /**
-     * Devuelve la información almacenada de un Excel a través de su identificador.
-     * @param fileId  identificador del archivo
-     * @return Un mapa donde cada clave es el nombre de una hoja, y su valor es la lista de filas representadas como mapas.
+     * Devuelve los nombres de las hojas de un Excel guardado sin leer sus filas.
+     * @param fileId identificador del archivo
+     * @return nombres de las hojas en el orden del libro, o {@code null} si no existe o no es un Excel
+     */
+    public List<String> getSheetNames(String fileId) {
+        StoredFile file = get(fileId);
+        if (file == null) return null;
+        return file.kind == Kind.WORKBOOK ? file.sheetNames : null;
+    }
+
+    /**
+     * Devuelve la tabla de un archivo guardado: la del CSV o la de una hoja del Excel.
+     * @param fileId identificador del archivo
+     * @param sheetName nombre de la hoja; si es {@code null} o vacío, la primera. Se ignora en archivos CSV.
+     * @return tabla, o {@code null} si no existe el archivo o la hoja
+     */
+    public ParsedTable getTable(String fileId, String sheetName) {
+        StoredFile file = get(fileId);
+        if (file == null || file.kind == Kind.SHEET) return null;
+        if (file.kind == Kind.CSV) return file.sheets.get(CSV_SHEET);
+        if (sheetName == null || sheetName.trim().isEmpty()) {
+            return file.sheetNames.isEmpty() ? null : loadSheet(fileId, file, file.sheetNames.get(0));
+        }
+        return loadSheet(fileId, file, sheetName);
+    }
+
+    /**
+     * Devuelve una hoja de un libro indexado, leyéndola del archivo original si no está guardada.
+     * Si varios hilos piden a la vez la misma hoja, solo uno la lee y el resto espera.
+     * @param fileId identificador del libro
+     * @param book libro indexado
+     * @param sheetName nombre de la hoja
+     * @return tabla de la hoja, o {@code null} si el libro no tiene esa hoja o no se ha podido leer
+     */
+    private ParsedTable loadSheet(String fileId, StoredFile book, String sheetName) {
+        Integer headerRow = book.headerRows.get(sheetName);
+        if (headerRow == null) return null;
+        int index = book.sheetNames.indexOf(sheetName);
+        String key = fileId + SHEET_KEY + index;
+        String part = SHEET_PART + index;
+        StoredFile sheet = get(key, fileId, part);  // en memoria, o ya leída y guardada en el almacén
+        if (sheet != null) return sheet.sheets.get(CSV_SHEET);
+
+        Object lock = sheetLocks.computeIfAbsent(key, k -> new Object());
+        synchronized (lock) {
+            try {
+                sheet = storage.get(key);  // la ha podido leer otro hilo mientras se esperaba
+                if (sheet == null) {
+                    Path source = store.source(fileId);
+                    if (source == null) {
+                        log.warn("No se encuentra el original del archivo {}", fileId);
+                        return null;
+                    }
+                    ParsedTable table = previewService.readExcelSheet(source, sheetName, headerRow);
+                    if (table == null) return null;
+                    Map<String, ParsedTable> sheets = new LinkedHashMap<>();
+                    sheets.put(CSV_SHEET, table);
+                    sheet = new StoredFile(Kind.SHEET, sheets);
+                    try {
+                        StoredFile read = sheet;
+                        store.write(fileId, part, out -> writeEntry(out, read));
+                        StoredFile mapped = readStored(fileId, part);
+                        if (mapped != null) sheet = mapped;
+                    } catch (IOException e) {
+                        // Se puede volver a leer del original
+                        log.warn("No se pudo guardar en el almacén la hoja {} del archivo {}: {}", sheetName, fileId, e.getMessage());
+                    }
+                    cache(key, sheet);
+                    log.debug("Hoja {} del archivo {} leída: {} filas", sheetName, fileId, table.getRowCount());
+                }
+                return sheet.sheets.get(CSV_SHEET);
+            } catch (IOException e) {
+                log.warn("No se pudo leer la hoja {} del archivo {}: {}", sheetName, fileId, e.getMessage());
+                return null;
+            } finally {
+                sheetLocks.remove(key, lock);
+            }
+        }
+    }
+
+    /**
+     * Elimina un archivo guardado, tanto de memoria como del almacén (con las hojas que se leyeron de él).
+     * @param fileId identificador del archivo
+     * @return {@code true} si existía y se ha eliminado
+     */
+    public boolean removeFile(String fileId) {
+        boolean removed;
+        try {
+            removed = store.delete(fileId);  // solo una llamada lo consigue
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar del almacén el archivo {}: {}", fileId, e.getMessage());
+            removed = false;
+        }
+        String prefix = fileId + SHEET_KEY;
+        storage.forEach((id, file) -> {
+            if ((id.equals(fileId) || id.startsWith(prefix)) && storage.remove(id, file)) {
+                storedBytes.addAndGet(-file.bytes);
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * Bytes que ocupan en memoria los archivos guardados.
+     * @return bytes aproximados
+     */
+    public long storedBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * Número de archivos guardados en memoria.
+     * @return número de archivos
+     */
+    public int storedFiles() {
+        return storage.size();
+    }
+
+    /**
+     * Guarda un archivo nuevo: reserva su id en el almacén, escribe su original (si es un libro) y su contenido,
+     * y lo guarda en memoria.
+     * @param fileId identificador del archivo
+     * @param file contenido del archivo
+     * @param source original de un libro indexado ({@code null} en el resto)
+     * @return {@code true} si se guardó; {@code false} si el id ya estaba en uso
+     * @throws IOException si no se puede escribir en el almacén (el id queda libre)
+     */
+    private boolean create(String fileId, StoredFile file, Path source) throws IOException {
+        if (!isValidFileId(fileId) || storage.containsKey(fileId) || !store.reserve(fileId)) {
+            return false;
+        }
+        try {
+            if (source != null) store.saveSource(fileId, source);
+            store.write(fileId, MAIN_PART, out -> writeEntry(out, file));
+        } catch (IOException | RuntimeException e) {
+            try {
+                store.delete(fileId);  // libera el id
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        StoredFile mapped = readStored(fileId, MAIN_PART);
+        cache(fileId, mapped != null ? mapped : file);
+        purgeIfDue();
+        return true;
+    }
+
+    /**
+     * Guarda en memoria un archivo que ya está en el almacén.
+     * @param key clave en memoria (id del archivo, o de una hoja leída de un libro)
+     * @param file contenido
+     */
+    private void cache(String key, StoredFile file) {
+        if (storage.putIfAbsent(key, file) == null) {
+            storedBytes.addAndGet(file.bytes);
+            evictIfNeeded(key);
+        }
+    }
+
+    private StoredFile get(String fileId) {
+        return get(fileId, fileId, MAIN_PART);
+    }
+
+    /**
+     * Devuelve una entrada de memoria o, si no está, la carga del almacén.
+     * @param key clave en memoria
+     * @param fileId identificador del archivo en el almacén
+     * @param part parte del archivo en el almacén
+     * @return entrada, o {@code null} si no existe
+     */
+    private StoredFile get(String key, String fileId, String part) {
+        StoredFile file = storage.get(key);
+        if (file != null) {
+            hits.increment();
+        } else if (isValidFileId(fileId)) {
+            // Solo un hilo carga del almacén cada entrada; el resto espera y recibe el mismo objeto
+            boolean[] loaded = {false};
+            file = storage.computeIfAbsent(key, k -> {
+                StoredFile stored = readStored(fileId, part);
+                if (stored != null) {
+                    storedBytes.addAndGet(stored.bytes);
+                    loaded[0] = true;
+                }
+                return stored;
+            });
+            if (file == null) misses.increment();
+            else (loaded[0] ? diskHits : hits).increment();
+        } else {
+            misses.increment();
+        }
+        if (file == null) return null;
+        long now = System.currentTimeMillis();
+        file.lastAccess = now;
+        touchIfDue(fileId, file, now);
+        evictIfNeeded(key);
+        return file;
+    }
+
+    /**
+     * Marca en el almacén como usado un archivo que se lee de memoria, para que no caduque mientras se usa
+     * (en cualquier instancia). Como mucho una vez cada {@code TOUCH_INTERVAL_MILLIS} por entrada.
+     * @param fileId identificador del archivo
+     * @param file entrada en memoria
+     * @param now instante actual
+     */
+    private void touchIfDue(String fileId, StoredFile file, long now) {
+        long due = file.storeTouched + TOUCH_INTERVAL_MILLIS;
+        if (now < due) return;
+        file.storeTouched = now;
+        try {
+            store.touch(fileId);
+        } catch (IOException e) {
+            log.warn("No se pudo marcar como usado en el almacén el archivo {}: {}", fileId, e.getMessage());
+        }
+    }
+
+    /**
+     * Quita de memoria los archivos caducados y, si se supera el presupuesto de bytes, los menos usados recientemente.
+     * Nunca desaloja el archivo que se acaba de guardar o pedir. Todos están ya en el almacén, de donde se vuelven a cargar.
+     * <p> Solo un hilo desaloja a la vez; si otro ya lo está haciendo, se continúa sin esperar.
+     * @param current archivo en uso
+     */
+    private void evictIfNeeded(String current) {
+        if (!evictionLock.tryLock()) return;
+        try {
+            long now = System.currentTimeMillis();
+            // Se copia el último acceso de cada archivo para ordenar sobre valores que no cambian durante la ordenación
+            List<Candidate> candidates = new ArrayList<>(storage.size());
+            storage.forEach((id, file) -> candidates.add(new Candidate(id, file, file.lastAccess)));
+            candidates.sort(Comparator.comparingLong(c -> c.lastAccess));  // del menos al más usado
+            for (Candidate candidate : candidates) {
+                if (candidate.fileId.equals(current)) continue;
+                boolean idle = idleTtlMillis > 0 && now - candidate.lastAccess > idleTtlMillis;
+                if (!idle && storedBytes.get() <= maxBytes) break;
+                if (storage.remove(candidate.fileId, candidate.file)) {
+                    storedBytes.addAndGet(-candidate.file.bytes);
+                    (idle ? idleEvictions : sizeEvictions).increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Elimina del almacén los archivos sin usar durante 'app.storage.retention-hours'. Como mucho una vez
+     * cada {@code PURGE_INTERVAL_MILLIS} por instancia.
+     */
+    private void purgeIfDue() {
+        if (retentionMillis <= 0) return;
+        long now = System.currentTimeMillis();
+        long due = nextPurge.get();
+        if (now < due || !nextPurge.compareAndSet(due, now + PURGE_INTERVAL_MILLIS)) return;
+        try {
+            int purged = store.purge(retentionMillis);
+            if (purged > 0) log.info("Eliminados del almacén {} archivos sin usar", purged);
+        } catch (IOException e) {
+            log.warn("Error al eliminar archivos caducados del almacén: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe una entrada en el formato del almacén: su tipo y, según el tipo, sus hojas ({@link TableSnapshot})
+     * o el nombre y la fila de cabecera de cada hoja del libro indexado.
+     */
+    private static void writeEntry(OutputStream stream, StoredFile file) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeByte(file.kind.code);
+        if (file.kind == Kind.WORKBOOK) {
+            out.writeInt(file.sheetNames.size());
+            for (String sheetName : file.sheetNames) {
+                out.writeUTF(sheetName);
+                out.writeInt(file.headerRows.get(sheetName));
+            }
+        } else {
+            TableSnapshot.write(out, file.sheets);
+        }
+        out.flush();
+    }
+
+    /**
+     * Carga una entrada del almacén. Las hojas se proyectan en memoria ({@link TableSnapshot#map}) en lugar de leerse.
+     * @param fileId identificador del archivo
+     * @param part parte del archivo
+     * @return entrada, o {@code null} si no existe o no se puede leer
+     */
+    private StoredFile readStored(String fileId, String part) {
+        try {
+            Path path = store.part(fileId, part);
+            if (path == null) return null;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(1);
+                if (channel.read(header, 0) < 1) throw new IOException("Archivo almacenado vacío");
+                Kind kind = Kind.of(header.get(0) & 0xFF);
+                if (kind == Kind.WORKBOOK) {
+                    DataInputStream in = new DataInputStream(Channels.newInputStream(channel.position(1)));
+                    int count = in.readInt();
+                    Map<String, Integer> headerRows = new LinkedHashMap<>();
+                    for (int i = 0; i < count; i++) {
+                        headerRows.put(in.readUTF(), in.readInt());
+                    }
+                    return new StoredFile(headerRows);
+                }
+                return new StoredFile(kind, TableSnapshot.map(channel, 1));
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo cargar del almacén el archivo {}: {}", fileId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * El id lo genera el backend (UUID), pero llega en la URL: se valida antes de buscarlo en el almacén.
+     * @param fileId identificador del archivo
+     * @return {@code true} si solo contiene letras, dígitos y guiones
      */
-    public Map<String, List<Map<String, String>>> getExcelFile(String fileId) {
-        return excelStorage.get(fileId);
+    private static boolean isValidFileId(String fileId) {
+        return fileId != null && fileId.matches("[A-Za-z0-9-]+");
     }
 
+    /**
+     * Archivo candidato a desalojo, con su último acceso en el momento de elegirlo.
+     */
+    private static final class Candidate {
+        private final String fileId;
+        private final StoredFile file;
+        private final long lastAccess;
+
+        private Candidate(String fileId, StoredFile file, long lastAccess) {
+            this.fileId = fileId;
+            this.file = file;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Tipo de entrada del almacén, con el código con el que se escribe en el almacén
+     * (el 0 era el de los libros leídos completos, que ya no se guardan).
+     */
+    private enum Kind {
+        CSV(1),
+        WORKBOOK(2),  // libro indexado: solo nombres de hoja y filas de cabecera
+        SHEET(3);     // hoja leída de un libro indexado
+
+        private final int code;
+
+        Kind(int code) {
+            this.code = code;
+        }
+
+        private static Kind of(int code) throws IOException {
+            for (Kind kind : values()) {
+                if (kind.code == code) return kind;
+            }
+            throw new IOException("Tipo de archivo almacenado no reconocido: " + code);
+        }
+    }
+
+    /**
+     * Archivo guardado: sus hojas (o, si es un libro indexado, sus cabeceras), el tamaño estimado y el último acceso.
+     */
+    private static final class StoredFile {
+        private final Kind kind;
+        private final Map<String, ParsedTable> sheets;
+        private final Map<String, Integer> headerRows;  // solo en libros indexados
+        private final List<String> sheetNames;          // solo en libros indexados
+        private final long bytes;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile long storeTouched;  // última vez que se marcó como usado en el almacén (0: al primer acceso)
+
+        private StoredFile(Kind kind, Map<String, ParsedTable> sheets) {
+            this.kind = kind;
+            this.sheets = sheets;
+            this.headerRows = null;
+            this.sheetNames = null;
+            long size = 0;
+            for (ParsedTable table : sheets.values()) {
+                size += table.estimateSize();
+            }
+            this.bytes = size;
+        }
+
+        private StoredFile(Map<String, Integer> headerRows) {
+            this.kind = Kind.WORKBOOK;
+            this.sheets = Collections.emptyMap();
+            this.headerRows = headerRows;
+            this.sheetNames = List.copyOf(headerRows.keySet());
+            long size = 0;
+            for (String sheetName : sheetNames) {
+                size += 2L * sheetName.length() + 16;
+            }
+            this.bytes = size;
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.HeaderDetection;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Detecta la fila de cabecera de una hoja, ya que estas suelen traer información y/o instrucciones antes.
+ * <p>
+ * Una fila es cabecera si tiene al menos dos celdas de texto, no tiene más celdas numéricas que de texto
+ * y la fila inmediatamente siguiente tiene al menos tantas celdas numéricas como de texto.
+ * </p>
+ * <p>
+ * Solo se examinan las primeras 'window' filas de la hoja (a partir de la primera que existe), y de cada fila solo
+ * las celdas que existen físicamente: no se calcula el ancho máximo de la hoja ni se crean celdas vacías.
+ * Así el coste no depende de la longitud de la hoja ni de las columnas vacías.
+ * </p>
+ */
+final class HeaderDetector {
+
+    private final int window;  // filas que se consideran como posible cabecera
+
+    /**
+     * Crea un detector.
+     * @param window número de filas, desde la primera de la hoja, que pueden ser cabecera
+     */
+    HeaderDetector(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Devuelve el número de filas que pueden ser cabecera.
+     * @return tamaño de la ventana
+     */
+    int getWindow() {
+        return window;
+    }
+
+    /**
+     * Busca la fila de cabecera de una hoja.
+     * @param sheet hoja del archivo
+     * @return decisión tomada; {@link HeaderDetection#isFound()} es {@code false} si ninguna fila de la ventana es cabecera
+     */
+    HeaderDetection detect(Sheet sheet) {
+        int first = sheet.getFirstRowNum();
+        if (first < 0) return HeaderDetection.notFound(0);
+        int last = (int) Math.min(sheet.getLastRowNum(), (long) first + window);
+
+        int previousRow = -2;
+        int previousText = 0, previousNum = 0;
+        int scanned = 0;
+        for (int i = first; i <= last; i++) {
+            Row row = sheet.getRow(i);
+            if (row == null) continue;
+            scanned++;
+            int text = 0, num = 0;
+            for (Cell cell : row) {  // solo las celdas que existen
+                if (cell.getCellType() == CellType.STRING) {
+                    if (!cell.getStringCellValue().trim().isEmpty()) text++;
+                } else if (cell.getCellType() == CellType.NUMERIC) {
+                    num++;
+                }
+            }
+            if (previousRow == i - 1) {
+                HeaderDetection detection = evaluate(previousRow, previousText, previousNum, text, num, scanned);
+                if (detection != null) return detection;
+            }
+            previousRow = i;
+            previousText = text;
+            previousNum = num;
+        }
+        return HeaderDetection.notFound(scanned);
+    }
+
+    /**
+     * Aplica la heurística de cabecera a una fila y a la siguiente a partir de su número de celdas de texto y numéricas.
+     * La usan tanto la lectura de hojas completas como la lectura por eventos de archivos .xlsx.
+     * <p> La confianza es el producto de la proporción de textos en la cabecera y de números en la fila siguiente
+     * (0,5 si la fila siguiente no tiene ni textos ni números).
+     * @param rowIndex fila candidata
+     * @param textCount celdas de texto no vacías de la fila candidata
+     * @param numCount celdas numéricas de la fila candidata
+     * @param nextText celdas de texto no vacías de la fila siguiente
+     * @param nextNum celdas numéricas de la fila siguiente
+     * @param rowsScanned filas examinadas hasta el momento
+     * @return decisión si la fila candidata es cabecera, o {@code null} si no lo es
+     */
+    static HeaderDetection evaluate(int rowIndex, int textCount, int numCount, int nextText, int nextNum, int rowsScanned) {
+        // Si la fila candidata a encabezado tiene al menos dos celdas con texto, y tiene mas celdas de texto que datos númericos
+        // la fila siguiente contiene más datos númericos que descriptivos
+        if (textCount <= 1 || textCount < numCount || nextNum < nextText) return null;
+        double headerScore = (double) textCount / (textCount + numCount);
+        double dataScore = nextText + nextNum == 0 ? 0.5 : (double) nextNum / (nextText + nextNum);
+        return new HeaderDetection(rowIndex, headerScore * dataScore, textCount, numCount, rowsScanned);
+    }
+}
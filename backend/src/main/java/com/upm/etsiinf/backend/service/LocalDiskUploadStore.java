@@ -0,0 +1,188 @@
+package com.upm.etsiinf.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Almacén de archivos subidos en un directorio local ('app.storage.dir'), que puede ser un volumen compartido
+ * por varias instancias del backend.
+ * <p>
+ * Cada archivo es un subdirectorio con el nombre de su {@code fileId}, que contiene una entrada {@code <parte>.upload}
+ * por parte y el original de los libros Excel ({@code source.book}). Crear el subdirectorio reserva el identificador
+ * (es atómico), las partes se escriben en un temporal que luego se renombra, y para eliminar un archivo primero se
+ * renombra su subdirectorio, de modo que ninguna instancia ve un archivo a medio escribir o a medio borrar.
+ * Una parte escrita no se modifica (se sustituye por otro archivo), así que se puede proyectar en memoria.
+ * La fecha de modificación del subdirectorio se actualiza en cada lectura (y con {@link #touch}) y es la que se usa
+ * para caducarlo.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalDiskUploadStore implements UploadStore {
+
+    private static final String PART_SUFFIX = ".upload";
+    private static final String SOURCE_FILE = "source.book";
+    private static final String DELETED_PREFIX = ".deleted-";  // subdirectorios de archivos que se están eliminando
+
+    private final Path root;
+
+    /**
+     * Constructor de LocalDiskUploadStore
+     * @param dir directorio del almacén (se crea si no existe)
+     * @throws IOException si no se puede crear el directorio
+     */
+    public LocalDiskUploadStore(@Value("${app.storage.dir:${java.io.tmpdir}/survey-uploader/store}") String dir) throws IOException {
+        this.root = Files.createDirectories(Paths.get(dir));
+    }
+
+    @Override
+    public boolean reserve(String fileId) throws IOException {
+        if (!isValidName(fileId)) return false;
+        try {
+            Files.createDirectory(fileDir(fileId));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void write(String fileId, String part, PartWriter writer) throws IOException {
+        Path dir = existingDir(fileId);
+        if (!isValidName(part)) throw new IllegalArgumentException("Nombre de parte no válido: " + part);
+        Path tmp = Files.createTempFile(dir, part, ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                writer.writeTo(out);
+            }
+            Files.move(tmp, dir.resolve(part + PART_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Path part(String fileId, String part) {
+        if (!isValidName(fileId) || !isValidName(part)) return null;
+        Path dir = fileDir(fileId);
+        Path path = dir.resolve(part + PART_SUFFIX);
+        if (!Files.exists(path)) return null;
+        touch(dir);
+        return path;
+    }
+
+    @Override
+    public void touch(String fileId) {
+        if (isValidName(fileId)) touch(fileDir(fileId));
+    }
+
+    @Override
+    public void saveSource(String fileId, Path source) throws IOException {
+        Path dir = existingDir(fileId);
+        // Se copia (si el origen está en otro sistema de archivos) con otro nombre y luego se renombra
+        Path tmp = dir.resolve(SOURCE_FILE + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.move(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dir.resolve(SOURCE_FILE), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Path source(String fileId) {
+        if (!isValidName(fileId)) return null;
+        Path source = fileDir(fileId).resolve(SOURCE_FILE);
+        return Files.exists(source) ? source : null;
+    }
+
+    @Override
+    public boolean delete(String fileId) throws IOException {
+        if (!isValidName(fileId)) return false;
+        Path deleted = root.resolve(DELETED_PREFIX + fileId + "-" + UUID.randomUUID());
+        try {
+            Files.move(fileDir(fileId), deleted, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        deleteTree(deleted);
+        return true;
+    }
+
+    @Override
+    public int purge(long maxAgeMillis) throws IOException {
+        long limit = System.currentTimeMillis() - maxAgeMillis;
+        int purged = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String name = dir.getFileName().toString();
+                try {
+                    if (name.startsWith(DELETED_PREFIX)) {
+                        deleteTree(dir);  // eliminación interrumpida (por ejemplo, al reiniciar)
+                    } else if (Files.getLastModifiedTime(dir).toMillis() < limit && delete(name)) {
+                        purged++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // la ha eliminado otra instancia mientras se recorría el directorio
+                }
+            }
+        }
+        return purged;
+    }
+
+    private Path existingDir(String fileId) throws IOException {
+        if (!isValidName(fileId)) throw new IllegalArgumentException("Identificador de archivo no válido: " + fileId);
+        Path dir = fileDir(fileId);
+        if (!Files.isDirectory(dir)) throw new NoSuchFileException(dir.toString(), null, "Archivo no reservado");
+        return dir;
+    }
+
+    private Path fileDir(String fileId) {
+        return root.resolve(fileId);
+    }
+
+    private static void touch(Path dir) {
+        try {
+            Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // solo adelanta su caducidad
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Los identificadores llegan en la URL: se validan para no salir del directorio del almacén.
+     * @param name identificador de archivo o nombre de parte
+     * @return {@code true} si solo contiene letras, dígitos y guiones
+     */
+    private static boolean isValidName(String name) {
+        return name != null && name.matches("[A-Za-z0-9-]+");
+    }
+}
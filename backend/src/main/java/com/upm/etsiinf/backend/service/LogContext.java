@@ -0,0 +1,103 @@
+package com.upm.etsiinf.backend.service;
+
+import org.slf4j.MDC;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Utilidades de registro (log) compartidas por el controlador y los servicios.
+ * <p>
+ * El identificador de cada petición se guarda en el MDC con la clave {@link #REQUEST_ID} y aparece en todas las
+ * líneas de log que se escriben mientras se atiende. Las tareas que se ejecutan en otros hilos (lectura de hojas,
+ * actualización de cada año, trabajos en segundo plano) se envuelven con {@code propagate} para conservarlo.
+ * </p>
+ * <p>
+ * Las listas grandes no se escriben enteras: {@link #sample} muestra su tamaño y sus primeros elementos,
+ * y solo se convierte en texto si el nivel del log hace que la línea se escriba.
+ * </p>
+ */
+public final class LogContext {
+
+    /** Clave del MDC con el identificador de la petición */
+    public static final String REQUEST_ID = "requestId";
+    /** Clave del MDC con el identificador del archivo que se está leyendo */
+    public static final String FILE_ID = "fileId";
+    /** Clave del MDC con el identificador del trabajo de actualización */
+    public static final String JOB_ID = "jobId";
+
+    private LogContext() {
+    }
+
+    /**
+     * Envuelve una tarea para que se ejecute con el MDC del hilo que la crea.
+     * @param task tarea
+     * @return tarea que instala el MDC actual, ejecuta 'task' y restaura el MDC del hilo que la ejecuta
+     */
+    public static Runnable propagate(Runnable task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = install(context);
+            try {
+                task.run();
+            } finally {
+                install(previous);
+            }
+        };
+    }
+
+    /**
+     * Igual que {@link #propagate(Runnable)} para tareas con resultado.
+     * @param task tarea
+     * @param <T> resultado de la tarea
+     * @return tarea que se ejecuta con el MDC del hilo que la crea
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = install(context);
+            try {
+                return task.call();
+            } finally {
+                install(previous);
+            }
+        };
+    }
+
+    /**
+     * Muestra de una colección para escribirla en el log: su tamaño y, como mucho, sus primeros 'limit' elementos.
+     * @param items colección (puede ser {@code null})
+     * @param limit elementos que se muestran como máximo
+     * @return objeto cuyo {@code toString()} construye la muestra (solo se llama si la línea se escribe)
+     */
+    public static Object sample(Collection<?> items, int limit) {
+        return new Object() {
+            @Override
+            public String toString() {
+                if (items == null) return "null";
+                StringBuilder sb = new StringBuilder().append(items.size()).append(" elementos [");
+                Iterator<?> it = items.iterator();
+                for (int i = 0; i < Math.max(0, limit) && it.hasNext(); i++) {
+                    if (i > 0) sb.append(", ");
+                    sb.append(it.next());
+                }
+                if (it.hasNext()) {
+                    sb.append(limit > 0 ? ", ..." : "...");
+                }
+                return sb.append(']').toString();
+            }
+        };
+    }
+
+    private static Map<String, String> install(Map<String, String> context) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+        return previous;
+    }
+}
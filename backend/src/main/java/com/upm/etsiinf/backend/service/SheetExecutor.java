@@ -0,0 +1,108 @@
+package com.upm.etsiinf.backend.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecuta en paralelo la lectura de las hojas de un libro Excel.
+ * <p>
+ * Cada hoja es una tarea independiente (detección de cabecera y conversión de sus filas). Las tareas de todas
+ * las subidas comparten un ejecutor con 'parallelism' hilos, de modo que ese es el número máximo de hojas
+ * que se leen a la vez en la aplicación. El resultado conserva el orden de las hojas en el libro.
+ * </p>
+ */
+final class SheetExecutor {
+
+    private final ExecutorService executor;  // null si las hojas se leen una detrás de otra
+
+    /**
+     * Crea el ejecutor de hojas.
+     * @param parallelism número máximo de hojas leídas a la vez; 0 o menos = número de procesadores, 1 = secuencial
+     */
+    SheetExecutor(int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        if (threads > 1) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "sheet-parser-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Lee las hojas y devuelve las que tienen resultado, en el orden en el que se indicaron.
+     * <p> Si solo hay una hoja, o el paralelismo es 1, se leen en el hilo actual.
+     * @param names nombres de las hojas, en el orden del libro
+     * @param tasks tarea de lectura de cada hoja (misma posición que su nombre); devuelve {@code null} si la hoja se ignora
+     * @param <T> resultado de la lectura de una hoja (su tabla, o solo su cabecera al indexar el libro)
+     * @return Un mapa donde cada clave es el nombre de una hoja no ignorada, y su valor el resultado de su lectura.
+     * @throws IOException si falla la lectura de alguna hoja
+     */
+    <T> Map<String, T> readAll(List<String> names, List<Callable<T>> tasks) throws IOException {
+        List<T> tables = new ArrayList<>(tasks.size());
+        try {
+            if (executor == null || tasks.size() <= 1) {
+                for (Callable<T> task : tasks) {
+                    tables.add(task.call());
+                }
+            } else {
+                List<Future<T>> futures = new ArrayList<>(tasks.size());
+                for (Callable<T> task : tasks) {
+                    futures.add(executor.submit(LogContext.propagate(task)));
+                }
+                try {
+                    for (Future<T> future : futures) {
+                        tables.add(future.get());
+                    }
+                } finally {
+                    for (Future<T> future : futures) {
+                        future.cancel(true);  // si una hoja falla, no se sigue con las demás
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lectura del archivo interrumpida", e);
+        } catch (Exception e) {
+            throw unwrap(e);
+        }
+
+        Map<String, T> sheetsData = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (tables.get(i) != null) {
+                sheetsData.put(names.get(i), tables.get(i));
+            }
+        }
+        return sheetsData;
+    }
+
+    private static IOException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return cause instanceof IOException ? (IOException) cause : new IOException("Error leyendo el archivo Excel", cause);
+    }
+
+    /**
+     * Detiene el ejecutor.
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.HeaderDetection;
+import com.upm.etsiinf.backend.model.ParsedTable;
+import com.upm.etsiinf.backend.model.UploadStatus;
+import io.micrometer.core.instrument.Timer;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lector de archivos .xlsx basado en eventos (SAX) de Apache POI.
+ * <p>
+ * En lugar de construir el modelo completo del libro (XSSFWorkbook), recorre el XML de cada hoja fila a fila
+ * y añade los datos directamente a una {@link ParsedTable}. Para detectar la cabecera solo necesita conservar
+ * la fila anterior, por lo que la memoria usada durante la lectura no depende del tamaño del libro.
+ * Aplica la misma heurística y ventana de cabecera que {@link HeaderDetector}: si ninguna de las primeras filas
+ * es cabecera, se deja de leer la hoja sin recorrer el resto de su XML.
+ * </p>
+ */
+final class StreamingXlsxReader {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingXlsxReader.class);
+
+    private final HeaderDetector headerDetector;
+    private final SheetExecutor sheetExecutor;
+    private final Timer headerTimer;
+
+    /**
+     * Crea un lector.
+     * @param headerDetector detector de cabecera, del que se toma la heurística y la ventana de filas
+     * @param sheetExecutor ejecutor con el que se leen las hojas en paralelo
+     * @param headerTimer donde se registra, por hoja, el tiempo desde que empieza su lectura hasta que se decide su cabecera
+     */
+    StreamingXlsxReader(HeaderDetector headerDetector, SheetExecutor sheetExecutor, Timer headerTimer) {
+        this.headerDetector = headerDetector;
+        this.sheetExecutor = sheetExecutor;
+        this.headerTimer = headerTimer;
+    }
+
+    /**
+     * Indexa las hojas de un archivo .xlsx sin convertir sus filas: de cada hoja solo se lee hasta encontrar
+     * la cabecera y la primera fila con datos.
+     * @param file archivo .xlsx
+     * @param progress estado en el que se cuentan las hojas encontradas, o {@code null}
+     * @return Un mapa, en el orden del libro, con la cabecera detectada de cada hoja válida (con cabecera y datos).
+     * @throws IOException excepcion
+     */
+    Map<String, HeaderDetection> indexSheets(Path file, UploadStatus progress) throws IOException {
+        return forEachSheet(file, (sheetName, part, styles, strings) -> {
+            SheetCollector collector = parse(sheetName, part, styles, strings,
+                    new SheetCollector(null, headerDetector.getWindow(), -1, true, headerTimer));
+            ParsedTable table = collector.getTable();
+            if (!FilePreviewService.isValidSheet(table)) {
+                log.debug("Hoja ignorada por falta de cabecera o de datos: {}", sheetName);
+                return null;
+            }
+            log.debug("Cabecera de la hoja {}: {}", sheetName, collector.getHeader());
+            if (progress != null) progress.sheetFound();
+            return collector.getHeader();
+        });
+    }
+
+    /**
+     * Lee una sola hoja de un archivo .xlsx cuya fila de cabecera ya se conoce (ver {@link #indexSheets}).
+     * @param file archivo .xlsx
+     * @param sheetName nombre de la hoja
+     * @param headerRow fila de la cabecera
+     * @param progress estado en el que se cuentan las filas leídas, o {@code null}
+     * @return tabla con las filas de la hoja, o {@code null} si el libro no tiene esa hoja
+     * @throws IOException excepcion
+     */
+    ParsedTable readSheet(Path file, String sheetName, int headerRow, UploadStatus progress) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                if (sheetName.equals(sheets.getSheetName())) {
+                    SheetCollector collector = parse(sheetName, sheets.getSheetPart(), reader.getStylesTable(),
+                            new ReadOnlySharedStringsTable(pkg), new SheetCollector(progress, 0, headerRow, false, null));
+                    return collector.getTable();
+                }
+            }
+            return null;
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Error leyendo el archivo Excel", e);
+        }
+    }
+
+    /**
+     * Aplica una lectura a cada hoja del libro, en paralelo, y devuelve los resultados no nulos en el orden del libro.
+     */
+    private <T> Map<String, T> forEachSheet(Path file, SheetTask<T> task) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            List<String> names = new ArrayList<>();
+            List<Callable<T>> tasks = new ArrayList<>();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                sheets.next().close();  // cada tarea abre su propio flujo de la hoja
+                String sheetName = sheets.getSheetName();
+                PackagePart part = sheets.getSheetPart();
+                names.add(sheetName);
+                tasks.add(() -> task.read(sheetName, part, styles, strings));
+            }
+            return sheetExecutor.readAll(names, tasks);
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Error leyendo el archivo Excel", e);
+        }
+    }
+
+    /**
+     * Recorre el XML de una hoja con su propio parser SAX.
+     * @return el colector que ha recibido las filas
+     */
+    private static SheetCollector parse(String sheetName, PackagePart part, StylesTable styles,
+                                        ReadOnlySharedStringsTable strings, SheetCollector collector) throws IOException {
+        try (InputStream sheet = part.getInputStream()) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new TypedSheetHandler(styles, strings, collector, new DataFormatter()));
+            try {
+                parser.parse(new InputSource(sheet));
+            } catch (StopReadingException e) {
+                // El colector ya tiene lo que necesita: no hace falta leer el resto de la hoja
+            }
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Error leyendo la hoja " + sheetName, e);
+        }
+        return collector;
+    }
+
+    /**
+     * Lectura de una hoja del libro.
+     */
+    @FunctionalInterface
+    private interface SheetTask<T> {
+        T read(String sheetName, PackagePart part, StylesTable styles, ReadOnlySharedStringsTable strings) throws IOException;
+    }
+
+    /**
+     * Manejador SAX de POI que, además de formatear los valores, anota el tipo de cada celda
+     * (texto, número o fórmula) y su columna, necesarios para la heurística de cabecera.
+     */
+    private static final class TypedSheetHandler extends XSSFSheetXMLHandler {
+        private final SheetCollector collector;
+
+        private TypedSheetHandler(StylesTable styles, ReadOnlySharedStringsTable strings,
+                                  SheetCollector collector, DataFormatter formatter) {
+            super(styles, strings, collector, formatter, false);
+            this.collector = collector;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (uri == null || uri.isEmpty() || XSSFRelation.NS_SPREADSHEETML.equals(uri)) {
+                if ("c".equals(localName)) {
+                    collector.startCell(attributes.getValue("r"), attributes.getValue("t"));
+                } else if ("f".equals(localName)) {
+                    collector.formulaCell();
+                }
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            if (collector.finished) {
+                throw new StopReadingException();
+            }
+        }
+    }
+
+    /**
+     * Interrumpe la lectura de una hoja cuando el colector ya no necesita más filas: se ha superado la ventana
+     * de cabecera sin encontrarla o, al indexar, ya se ha visto la primera fila de datos.
+     */
+    private static final class StopReadingException extends SAXException {
+        private StopReadingException() {
+            super("Lectura de la hoja terminada");
+        }
+    }
+
+    /**
+     * Recibe las filas de una hoja, detecta la cabecera (o usa la fila indicada) y acumula las filas de datos en una tabla.
+     */
+    private static final class SheetCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final UploadStatus progress;
+        private final int window;
+        private final int fixedHeaderRow;      // fila de cabecera ya conocida, o -1 para detectarla
+        private final boolean indexOnly;       // terminar en cuanto haya una fila de datos
+        private final Timer headerTimer;       // tiempo hasta decidir la cabecera, o null si no se detecta
+        private final long startNanos = System.nanoTime();
+        private int firstRowNum = -1;
+        private int rowsScanned;
+        private boolean finished;              // no hacen falta más filas
+
+        // Fila actual
+        private int rowNum;
+        private String[] cells = new String[16];
+        private int lastCellNum;          // igual que Row.getLastCellNum(): última columna con celda + 1
+        private int textCount;
+        private int numCount;
+        private int cellColumn;
+        private String cellType;
+        private boolean cellFormula;
+
+        // Fila anterior, candidata a cabecera mientras no se haya encontrado
+        private int previousRowNum = -2;
+        private String[] previousCells;
+        private int previousLastCellNum;
+        private int previousTextCount;
+        private int previousNumCount;
+
+        private HeaderDetection header;
+        private List<String> headers;
+        private ParsedTable table;
+
+        private SheetCollector(UploadStatus progress, int window, int fixedHeaderRow, boolean indexOnly, Timer headerTimer) {
+            this.progress = progress;
+            this.window = window;
+            this.fixedHeaderRow = fixedHeaderRow;
+            this.indexOnly = indexOnly;
+            this.headerTimer = headerTimer;
+        }
+
+        private void startCell(String ref, String type) {
+            cellColumn = ref != null ? new CellReference(ref).getCol() : lastCellNum;
+            cellType = type;
+            cellFormula = false;
+            lastCellNum = Math.max(lastCellNum, cellColumn + 1);
+        }
+
+        private void formulaCell() {
+            cellFormula = true;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            this.rowNum = rowNum;
+            Arrays.fill(cells, 0, Math.min(lastCellNum, cells.length), null);
+            lastCellNum = 0;
+            textCount = 0;
+            numCount = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (formattedValue == null) return;
+            if (cellColumn >= cells.length) {
+                cells = Arrays.copyOf(cells, Math.max(cells.length * 2, cellColumn + 1));
+            }
+            cells[cellColumn] = formattedValue;
+            if (cellFormula) return;  // las fórmulas no cuentan ni como texto ni como número
+            if ("s".equals(cellType) || "inlineStr".equals(cellType)) {
+                if (!formattedValue.trim().isEmpty()) textCount++;
+            } else if ((cellType == null || "n".equals(cellType)) && !formattedValue.isEmpty()) {
+                numCount++;
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (headers == null && fixedHeaderRow >= 0) {
+                if (rowNum == fixedHeaderRow) {
+                    startTable(cells, lastCellNum);
+                } else if (rowNum > fixedHeaderRow) {
+                    finished = true;  // la fila de cabecera ya no está en la hoja
+                }
+                return;
+            }
+            if (headers == null) {
+                if (firstRowNum < 0) firstRowNum = rowNum;
+                rowsScanned++;
+                if (previousRowNum == rowNum - 1) {
+                    header = HeaderDetector.evaluate(previousRowNum,
+                            previousTextCount, previousNumCount, textCount, numCount, rowsScanned);
+                }
+                if (header != null) {
+                    headerDecided();
+                    startTable(previousCells, previousLastCellNum);
+                    addDataRow();
+                    return;
+                }
+                previousRowNum = rowNum;
+                previousCells = Arrays.copyOf(cells, lastCellNum);
+                previousLastCellNum = lastCellNum;
+                previousTextCount = textCount;
+                previousNumCount = numCount;
+                if (rowNum - firstRowNum >= window) {
+                    headerDecided();
+                    finished = true;  // ninguna fila de la ventana es cabecera
+                }
+            } else {
+                addDataRow();
+            }
+        }
+
+        private void headerDecided() {
+            if (headerTimer != null) headerTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Crea la tabla con la fila de cabecera indicada.
+         */
+        private void startTable(String[] headerCells, int headerCellNum) {
+            headers = new ArrayList<>(headerCellNum);
+            for (int c = 0; c < headerCellNum; c++) {
+                headers.add(headerCells[c] == null ? "" : headerCells[c].trim());
+            }
+            table = new ParsedTable(headers);
+        }
+
+        /**
+         * Añade la fila actual a la tabla si tiene algún valor en las columnas de la cabecera.
+         */
+        private void addDataRow() {
+            String[] values = new String[headers.size()];
+            boolean anyValue = false;
+            for (int c = 0; c < values.length; c++) {
+                String value = c < cells.length && cells[c] != null ? cells[c].trim() : "";
+                if (!value.isEmpty()) anyValue = true;
+                values[c] = value;
+            }
+            if (anyValue) {
+                table.addRow(values);
+                if (progress != null) progress.rowParsed();
+                if (indexOnly) finished = true;
+            }
+        }
+
+        /**
+         * Devuelve la decisión sobre la cabecera de la hoja.
+         * @return detección, o {@code null} si no se encontró cabecera
+         */
+        private HeaderDetection getHeader() {
+            return header;
+        }
+
+        /**
+         * Devuelve la tabla leída.
+         * @return tabla con las filas de datos, o {@code null} si no se encontró cabecera
+         */
+        private ParsedTable getTable() {
+            if (table != null) table.trimToSize();
+            return table;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import com.upm.etsiinf.backend.model.TableColumn;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formato columnar e inmutable con el que se guardan en el almacén las hojas de un archivo subido,
+ * pensado para leerse proyectado en memoria ({@link MappedByteBuffer}) sin reconstruir las tablas en el heap.
+ * <p>
+ * Bloque de cabecera ("UPSN", versión, ancho en bytes de los códigos), diccionario de textos (número de textos,
+ * sus desplazamientos de ancho fijo y sus bytes UTF-8 seguidos) y, por cada hoja: código de su nombre, número de filas
+ * y de columnas, código del nombre de cada columna y el código de cada celda, columna a columna.
+ * Cada texto distinto (nombres de hoja y de columna incluidos) se guarda una sola vez y todas las celdas tienen el mismo
+ * ancho (1, 2 o 4 bytes según el tamaño del diccionario), de modo que la posición de una celda se calcula directamente.
+ * </p>
+ * <p>
+ * Las tablas que devuelve {@link #map} son de solo lectura y leen cada celda del archivo al pedirla: el sistema
+ * operativo mantiene en su caché de páginas las partes más usadas. Como se proyecta con un único buffer,
+ * una instantánea no puede superar los 2 GB.
+ * </p>
+ */
+final class TableSnapshot {
+
+    private static final int MAGIC = 0x5550534E;  // "UPSN"
+    private static final int VERSION = 1;
+
+    private TableSnapshot() {
+    }
+
+    /**
+     * Escribe las hojas de un archivo.
+     * @param stream destino (no se cierra)
+     * @param sheets mapa nombre de hoja → tabla (un CSV se guarda como una única hoja)
+     * @throws IOException si falla la escritura
+     */
+    static void write(OutputStream stream, Map<String, ParsedTable> sheets) throws IOException {
+        // Primera pasada: diccionario con todos los textos distintos
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        for (Map.Entry<String, ParsedTable> entry : sheets.entrySet()) {
+            ParsedTable table = entry.getValue();
+            codes.putIfAbsent(entry.getKey(), codes.size());
+            for (String header : table.getHeaders()) {
+                codes.putIfAbsent(header, codes.size());
+            }
+            for (int c = 0; c < table.getWidth(); c++) {
+                for (int r = 0; r < table.getRowCount(); r++) {
+                    codes.putIfAbsent(table.getValue(r, c), codes.size());
+                }
+            }
+        }
+        int codeWidth = codeWidth(codes.size());
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(codeWidth);
+        out.writeInt(codes.size());
+        List<byte[]> texts = new ArrayList<>(codes.size());
+        int offset = 0;
+        for (String text : codes.keySet()) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            texts.add(bytes);
+            out.writeInt(offset);
+            offset += bytes.length;
+        }
+        out.writeInt(offset);
+        for (byte[] bytes : texts) {
+            out.write(bytes);
+        }
+
+        // Segunda pasada: celdas codificadas
+        out.writeInt(sheets.size());
+        for (Map.Entry<String, ParsedTable> entry : sheets.entrySet()) {
+            ParsedTable table = entry.getValue();
+            out.writeInt(codes.get(entry.getKey()));
+            out.writeInt(table.getRowCount());
+            out.writeInt(table.getWidth());
+            for (String header : table.getHeaders()) {
+                out.writeInt(codes.get(header));
+            }
+            for (int c = 0; c < table.getWidth(); c++) {
+                for (int r = 0; r < table.getRowCount(); r++) {
+                    writeCode(out, codes.get(table.getValue(r, c)), codeWidth);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Proyecta en memoria una instantánea escrita con {@link #write} y devuelve sus hojas sin copiar sus celdas.
+     * <p> La proyección sigue siendo válida al cerrar el canal o borrar el archivo.
+     * @param channel archivo abierto en lectura
+     * @param position posición del archivo en la que empieza la instantánea
+     * @return mapa nombre de hoja → tabla de solo lectura, en el orden original
+     * @throws IOException si el contenido no tiene el formato esperado o es demasiado grande
+     */
+    static Map<String, ParsedTable> map(FileChannel channel, long position) throws IOException {
+        long size = channel.size() - position;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Instantánea demasiado grande para proyectarla en memoria: " + size + " bytes");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Formato de archivo almacenado no reconocido");
+            }
+            Dictionary dictionary = new Dictionary(buffer, buffer.getInt(8), buffer.getInt(12), 16);
+            int pos = dictionary.end;
+            int sheetCount = buffer.getInt(pos);
+            pos += 4;
+            Map<String, ParsedTable> sheets = new LinkedHashMap<>();
+            for (int s = 0; s < sheetCount; s++) {
+                String name = dictionary.text(buffer.getInt(pos));
+                int rows = buffer.getInt(pos + 4);
+                int width = buffer.getInt(pos + 8);
+                pos += 12;
+                List<String> headers = new ArrayList<>(width);
+                for (int c = 0; c < width; c++) {
+                    headers.add(dictionary.text(buffer.getInt(pos)));
+                    pos += 4;
+                }
+                List<MappedColumn> columns = new ArrayList<>(width);
+                for (int c = 0; c < width; c++) {
+                    columns.add(new MappedColumn(dictionary, pos, rows));
+                    pos += rows * dictionary.codeWidth;
+                }
+                sheets.put(name, ParsedTable.readOnly(headers, columns, rows));
+            }
+            return sheets;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Archivo almacenado incompleto", e);
+        }
+    }
+
+    private static int codeWidth(int dictionarySize) {
+        if (dictionarySize <= 1 << 8) return 1;
+        if (dictionarySize <= 1 << 16) return 2;
+        return 4;
+    }
+
+    private static void writeCode(DataOutputStream out, int code, int width) throws IOException {
+        switch (width) {
+            case 1:
+                out.writeByte(code);
+                break;
+            case 2:
+                out.writeShort(code);
+                break;
+            default:
+                out.writeInt(code);
+        }
+    }
+
+    /**
+     * Diccionario de textos de una instantánea proyectada.
+     */
+    private static final class Dictionary {
+        private final ByteBuffer buffer;
+        private final int codeWidth;
+        private final int size;
+        private final int offsets;  // posición de los desplazamientos de cada texto
+        private final int texts;    // posición de los bytes de los textos
+        private final int end;      // posición siguiente al diccionario
+
+        private Dictionary(ByteBuffer buffer, int codeWidth, int size, int offsets) {
+            this.buffer = buffer;
+            this.codeWidth = codeWidth;
+            this.size = size;
+            this.offsets = offsets;
+            this.texts = offsets + 4 * (size + 1);
+            this.end = texts + buffer.getInt(offsets + 4 * size);
+        }
+
+        private String text(int code) {
+            if (code < 0 || code >= size) throw new IndexOutOfBoundsException("Código " + code + " de " + size);
+            int start = buffer.getInt(offsets + 4 * code);
+            int length = buffer.getInt(offsets + 4 * (code + 1)) - start;
+            if (length == 0) return "";
+            byte[] bytes = new byte[length];
+            buffer.get(texts + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int code(int position) {
+            switch (codeWidth) {
+                case 1:
+                    return buffer.get(position) & 0xFF;
+                case 2:
+                    return buffer.getShort(position) & 0xFFFF;
+                default:
+                    return buffer.getInt(position);
+            }
+        }
+    }
+
+    /**
+     * Columna de una instantánea proyectada: cada celda se lee del buffer al pedirla.
+     */
+    private static final class MappedColumn implements TableColumn {
+        private final Dictionary dictionary;
+        private final int start;  // posición de la primera celda
+        private final int rows;
+
+        private MappedColumn(Dictionary dictionary, int start, int rows) {
+            this.dictionary = dictionary;
+            this.start = start;
+            this.rows = rows;
+        }
+
+        @Override
+        public String get(int row) {
+            if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Fila " + row + " de " + rows);
+            return dictionary.text(dictionary.code(start + row * dictionary.codeWidth));
+        }
+
+        @Override
+        public long estimateSize() {
+            return 32;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.UpdateJob;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servicio que ejecuta en segundo plano las actualizaciones de indicadores ({@code /file/updateInd/jobs}).
+ * <p>
+ * La petición solo prepara los datos y devuelve el identificador del trabajo; los UPDATE se lanzan en un
+ * ejecutor con un número limitado de hilos ('app.update.jobs.threads') y de trabajos en espera
+ * ('app.update.jobs.queue-capacity'). Cada {@code UpdateResult} se añade al {@link UpdateJob} en cuanto termina
+ * su lote, de modo que se puede ir leyendo mientras el trabajo avanza, y el resumen por año e indicador
+ * se consulta sin descargar todos los resultados.
+ * </p>
+ * <p>
+ * Cada trabajo conserva en memoria solo sus últimos 'app.update.jobs.replay-limit' resultados (una lectura retomada
+ * con 'from' no puede ir más atrás) y los recuentos del resumen. Los trabajos terminados se olvidan pasados
+ * 'app.update.jobs.ttl-minutes', al encolar uno nuevo o al consultar cualquiera.
+ * </p>
+ */
+@Service
+public class UpdateJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateJobService.class);
+
+    private final DatabaseService databaseService;
+    private final ThreadPoolExecutor executor;
+    private final long jobTtlMillis;
+    private final int replayLimit;
+    private final Map<String, UpdateJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor de UpdateJobService
+     * @param databaseService servicio que actualiza las bases de datos
+     * @param threads hilos dedicados a ejecutar actualizaciones
+     * @param queueCapacity trabajos que pueden esperar a un hilo libre antes de rechazar nuevas actualizaciones
+     * @param jobTtlMinutes minutos que se conservan los resultados de un trabajo terminado
+     * @param replayLimit resultados de cada trabajo que se conservan para leerlos
+     */
+    public UpdateJobService(DatabaseService databaseService,
+                            @Value("${app.update.jobs.threads:2}") int threads,
+                            @Value("${app.update.jobs.queue-capacity:8}") int queueCapacity,
+                            @Value("${app.update.jobs.ttl-minutes:60}") long jobTtlMinutes,
+                            @Value("${app.update.jobs.replay-limit:10000}") int replayLimit) {
+        this.databaseService = databaseService;
+        this.jobTtlMillis = jobTtlMinutes * 60_000;
+        this.replayLimit = replayLimit;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "update-job-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Encola la actualización de los indicadores con los datos ya filtrados del archivo.
+     * Los parámetros son los mismos que los de {@link DatabaseService#updateIndicatorInstance}.
+     * @param processId ID del proceso
+     * @param columnMapping columnas mapeadas por el usuario
+     * @param data datos filtrados del archivo
+     * @param date fecha de subida
+     * @param attribute atributo asociado a los indicadores
+     * @param attributeValueColumn columna con el valor del atributo
+     * @param academicYearColumn columna que contiene los años academicos
+     * @param allOrNothing si cada año se aplica completo o no se aplica
+     * @return trabajo creado, todavía pendiente
+     * @throws java.util.concurrent.RejectedExecutionException si hay demasiadas actualizaciones pendientes
+     */
+    public UpdateJob submit(String processId, Map<String, String> columnMapping, List<Map<String, Object>> data,
+                            Date date, String attribute, String attributeValueColumn, String academicYearColumn,
+                            boolean allOrNothing) {
+        purgeFinished();
+        UpdateJob job = new UpdateJob(UUID.randomUUID().toString(), replayLimit);
+        jobs.put(job.getJobId(), job);
+        try {
+            executor.execute(LogContext.propagate(() -> {
+                MDC.put(LogContext.JOB_ID, job.getJobId());
+                job.start();
+                try {
+                    databaseService.updateIndicatorInstance(processId, columnMapping, data, date,
+                            attribute, attributeValueColumn, academicYearColumn, allOrNothing, job::add);
+                    job.complete();
+                    log.info("Trabajo de actualización {} terminado", job.getJobId());
+                } catch (Exception e) {
+                    log.error("Error en el trabajo de actualización {}", job.getJobId(), e);
+                    job.fail(e.getMessage());
+                }
+            }));
+        } catch (RuntimeException e) {
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Devuelve un trabajo de actualización.
+     * @param jobId identificador del trabajo
+     * @return trabajo, o {@code null} si no existe (o ya se ha olvidado)
+     */
+    public UpdateJob getJob(String jobId) {
+        purgeFinished();
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Olvida los trabajos que terminaron hace más de 'app.update.jobs.ttl-minutes'.
+     */
+    private void purgeFinished() {
+        long limit = System.currentTimeMillis() - jobTtlMillis;
+        jobs.values().removeIf(j -> j.isCompleted() && j.getFinishedAt() < limit);
+    }
+
+    /**
+     * Detiene el ejecutor al cerrar la aplicación.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,168 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import com.upm.etsiinf.backend.model.UploadStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servicio que lee en segundo plano los archivos subidos en modo asíncrono.
+ * <p>
+ * La petición de subida solo copia el archivo a disco y devuelve su identificador; la lectura se hace en un
+ * ejecutor con un número limitado de hilos ('app.upload.threads') y de trabajos en espera ('app.upload.queue-capacity').
+ * Mientras tanto, el estado de cada archivo ({@link UploadStatus}) se puede consultar con su identificador.
+ * Al terminar, el archivo queda guardado en {@link FileStorageService} igual que con la subida síncrona.
+ * </p>
+ * <p>
+ * El archivo ya leído se guarda en el {@link UploadStore} compartido, pero el estado de su lectura solo existe en
+ * la memoria de la instancia que recibió la subida: con varias instancias, el balanceador debe enviar las consultas
+ * de estado de un cliente a la misma instancia (sesiones persistentes), o estas responden que no existe.
+ * </p>
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadJobService.class);
+
+    private final FilePreviewService previewService;
+    private final FileStorageService storageService;
+    private final ThreadPoolExecutor executor;
+    private final long statusTtlMillis;
+    private final Map<String, UploadStatus> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor de UploadJobService
+     * @param previewService servicio de lectura de archivos
+     * @param storageService servicio de almacenamiento de archivos
+     * @param threads hilos dedicados a leer archivos
+     * @param queueCapacity trabajos que pueden esperar a un hilo libre antes de rechazar nuevas subidas
+     * @param statusTtlMinutes minutos que se conserva el estado de un trabajo terminado
+     */
+    public UploadJobService(FilePreviewService previewService, FileStorageService storageService,
+                            @Value("${app.upload.threads:2}") int threads,
+                            @Value("${app.upload.queue-capacity:16}") int queueCapacity,
+                            @Value("${app.upload.status-ttl-minutes:60}") long statusTtlMinutes) {
+        this.previewService = previewService;
+        this.storageService = storageService;
+        this.statusTtlMillis = statusTtlMinutes * 60_000;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "upload-parser-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Encola la lectura de un archivo CSV o Excel y devuelve su estado inicial.
+     * @param file archivo subido
+     * @return estado del trabajo, con el identificador asignado al archivo
+     * @throws IOException si no se puede copiar el archivo a disco
+     * @throws IllegalArgumentException si el formato no es CSV ni Excel
+     * @throws java.util.concurrent.RejectedExecutionException si hay demasiados archivos pendientes de leer
+     */
+    public UploadStatus submit(MultipartFile file) throws IOException {
+        String fileName = file.getOriginalFilename();
+        boolean csv = fileName != null && fileName.endsWith(".csv");
+        boolean excel = fileName != null && (fileName.endsWith(".xls") || fileName.endsWith(".xlsx"));
+        if (!csv && !excel) {
+            throw new IllegalArgumentException("Formato de archivo no soportado. Solo se admiten CSV y Excel.");
+        }
+        purgeFinished();
+
+        // El archivo temporal de la petición se borra al responder: se copia antes de encolar la lectura
+        Path tmp = previewService.receive(file);
+        UploadStatus status = new UploadStatus(UUID.randomUUID().toString(), fileName);
+        jobs.put(status.getFileId(), status);
+        try {
+            executor.execute(LogContext.propagate(() -> parse(status, tmp, csv)));
+        } catch (RuntimeException e) {
+            jobs.remove(status.getFileId());
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return status;
+    }
+
+    /**
+     * Devuelve el estado de la lectura de un archivo.
+     * @param fileId identificador del archivo
+     * @return estado, o {@code null} si no hay ningún trabajo con ese identificador en esta instancia
+     */
+    public UploadStatus getStatus(String fileId) {
+        return jobs.get(fileId);
+    }
+
+    private void parse(UploadStatus status, Path tmp, boolean csv) {
+        MDC.put(LogContext.FILE_ID, status.getFileId());
+        status.start();
+        try {
+            if (csv) {
+                ParsedTable table = previewService.readCSV(Files.newInputStream(tmp), status);
+                if (!storageService.saveCSVFile(status.getFileId(), table)) {
+                    throw new IllegalStateException("Identificador de archivo duplicado: " + status.getFileId());
+                }
+                status.complete(new ArrayList<>());
+            } else {
+                // Solo se indexan las hojas y se lee la primera; el resto se lee al abrirla
+                Map<String, Integer> validSheets = previewService.indexExcel(tmp, status);
+                if (validSheets.isEmpty()) {
+                    status.fail("No hay hojas válidas");
+                    return;
+                }
+                if (!storageService.saveExcelWorkbook(status.getFileId(), tmp, validSheets)) {
+                    throw new IllegalStateException("Identificador de archivo duplicado: " + status.getFileId());
+                }
+                ParsedTable first = storageService.getTable(status.getFileId(), null);
+                if (first != null) status.rowsParsed(first.getRowCount());
+                status.complete(new ArrayList<>(validSheets.keySet()));
+            }
+            log.info("Archivo {} guardado con ID {}", status.getFileName(), status.getFileId());
+        } catch (Exception e) {
+            log.error("Error al leer el archivo {}", status.getFileName(), e);
+            status.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.warn("No se pudo borrar el archivo temporal {}: {}", tmp, e.getMessage());
+            }
+            MDC.remove(LogContext.FILE_ID);
+        }
+    }
+
+    /**
+     * Olvida el estado de los trabajos que terminaron hace más de 'app.upload.status-ttl-minutes'.
+     */
+    private void purgeFinished() {
+        long limit = System.currentTimeMillis() - statusTtlMillis;
+        jobs.values().removeIf(s -> s.isCompleted() && s.getFinishedAt() < limit);
+    }
+
+    /**
+     * Detiene el ejecutor al cerrar la aplicación.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,106 @@
+package com.upm.etsiinf.backend.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Almacén persistente de los archivos subidos, compartido por todas las instancias del backend.
+ * <p>
+ * {@link FileStorageService} guarda aquí cada archivo al subirlo y lo busca aquí cuando no lo tiene en memoria,
+ * de modo que cualquier instancia que comparta el almacén puede atender un {@code fileId}, y los archivos
+ * se conservan tras reiniciar sin volver a leerlos.
+ * </p>
+ * <p>
+ * Cada archivo se identifica por su {@code fileId} y se compone de partes (su contenido ya leído, las hojas de un
+ * libro que se han ido leyendo) y, si es un libro Excel, de su archivo original. El formato del contenido de cada
+ * parte lo decide {@link FileStorageService}; el almacén solo guarda bytes.
+ * </p>
+ * <p>
+ * La implementación se elige con 'app.storage.type' ({@code local}: {@link LocalDiskUploadStore}).
+ * Todos los métodos pueden llamarse desde varios hilos e instancias a la vez.
+ * </p>
+ */
+public interface UploadStore {
+
+    /**
+     * Reserva un identificador para un archivo nuevo. Solo una llamada (en cualquier instancia) lo consigue.
+     * @param fileId identificador del archivo
+     * @return {@code true} si se ha reservado; {@code false} si ya estaba en uso
+     * @throws IOException si no se puede acceder al almacén
+     */
+    boolean reserve(String fileId) throws IOException;
+
+    /**
+     * Escribe una parte de un archivo reservado, sustituyendo la anterior si existía.
+     * Quien lee la parte ve el contenido anterior o el nuevo completo, nunca uno a medias.
+     * @param fileId identificador del archivo
+     * @param part nombre de la parte (letras, dígitos y guiones)
+     * @param writer escribe el contenido de la parte
+     * @throws IOException si no se puede escribir
+     */
+    void write(String fileId, String part, PartWriter writer) throws IOException;
+
+    /**
+     * Devuelve una parte de un archivo en el disco local, para leerla proyectada en memoria.
+     * La parte no cambia mientras exista: una nueva escritura la sustituye por otro archivo.
+     * @param fileId identificador del archivo
+     * @param part nombre de la parte
+     * @return ruta de la parte, o {@code null} si no existe
+     * @throws IOException si no se puede recuperar
+     */
+    Path part(String fileId, String part) throws IOException;
+
+    /**
+     * Marca un archivo como usado, para que {@link #purge} no lo elimine aunque se esté leyendo de memoria.
+     * @param fileId identificador del archivo
+     * @throws IOException si no se puede actualizar
+     */
+    void touch(String fileId) throws IOException;
+
+    /**
+     * Guarda el archivo original de un libro Excel reservado.
+     * @param fileId identificador del archivo
+     * @param source archivo en disco; se mueve al almacén
+     * @throws IOException si no se puede guardar
+     */
+    void saveSource(String fileId, Path source) throws IOException;
+
+    /**
+     * Devuelve el archivo original de un libro Excel en el disco local, para leer sus hojas.
+     * @param fileId identificador del archivo
+     * @return ruta del original, o {@code null} si no existe
+     * @throws IOException si no se puede recuperar
+     */
+    Path source(String fileId) throws IOException;
+
+    /**
+     * Elimina un archivo con todas sus partes y su original. Si varias llamadas lo eliminan a la vez,
+     * solo una devuelve {@code true}.
+     * @param fileId identificador del archivo
+     * @return {@code true} si existía
+     * @throws IOException si no se puede eliminar
+     */
+    boolean delete(String fileId) throws IOException;
+
+    /**
+     * Elimina los archivos que no se han leído ni escrito desde hace más de 'maxAgeMillis'.
+     * @param maxAgeMillis antigüedad máxima en milisegundos
+     * @return número de archivos eliminados
+     * @throws IOException si no se puede recorrer el almacén
+     */
+    int purge(long maxAgeMillis) throws IOException;
+
+    /**
+     * Escribe el contenido de una parte.
+     */
+    @FunctionalInterface
+    interface PartWriter {
+        /**
+         * Escribe el contenido.
+         * @param out destino (no hay que cerrarlo)
+         * @throws IOException si falla la escritura
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
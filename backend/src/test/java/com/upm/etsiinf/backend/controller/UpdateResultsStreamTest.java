@@ -0,0 +1,63 @@
+package com.upm.etsiinf.backend.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upm.etsiinf.backend.model.UpdateJob;
+import com.upm.etsiinf.backend.model.UpdateResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateResultsStreamTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void readerBehindTheBufferGetsSkippedRecord() throws Exception {
+		UpdateJob job = finishedJob(10, 3);
+
+		List<JsonNode> lines = stream(job, 0);
+
+		assertEquals(4, lines.size());
+		assertEquals(0, lines.get(0).get("skipped").get("from").asInt());
+		assertEquals(7, lines.get(0).get("skipped").get("to").asInt());
+		assertEquals("C7", lines.get(1).get("column").asText());
+		assertEquals("C9", lines.get(3).get("column").asText());
+	}
+
+	@Test
+	void resumingInsideTheBufferHasNoSkippedRecord() throws Exception {
+		UpdateJob job = finishedJob(10, 3);
+
+		List<JsonNode> lines = stream(job, 8);
+
+		assertEquals(2, lines.size());
+		assertFalse(lines.get(0).has("skipped"));
+		assertEquals("C8", lines.get(0).get("column").asText());
+	}
+
+	private static UpdateJob finishedJob(int results, int replayLimit) {
+		UpdateJob job = new UpdateJob("job", replayLimit);
+		job.start();
+		for (int i = 0; i < results; i++) {
+			job.add(new UpdateResult("2024", "C" + i, "Tasa", i, true, 1, null));
+		}
+		job.complete();
+		return job;
+	}
+
+	private List<JsonNode> stream(UpdateJob job, int from) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Controller.writeResults(job, from, out, objectMapper, 10);
+		List<JsonNode> lines = new ArrayList<>();
+		for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) lines.add(objectMapper.readTree(line));
+		}
+		return lines;
+	}
+}
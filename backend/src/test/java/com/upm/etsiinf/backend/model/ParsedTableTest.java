@@ -0,0 +1,102 @@
+package com.upm.etsiinf.backend.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParsedTableTest {
+
+	@Test
+	void keepsValuesExactlyAsRead() {
+		String[] values = {"3", "-7", "4.5", "0", "", "03", "1.50", "-0", "1e5", "NaN", "2d", "9007199254740993",
+				"0.1", "1.", "-", "2023-24", "Sí", "4.5"};
+		ParsedTable table = new ParsedTable(List.of("Valor"));
+		for (String value : values) {
+			table.addRow(new String[]{value});
+		}
+		table.addRow(new String[0]);  // celda que falta
+		table.trimToSize();
+		table.addRow(new String[]{"5"});  // después de ajustar la capacidad
+
+		for (int r = 0; r < values.length; r++) {
+			assertEquals(values[r], table.getValue(r, 0), "fila " + r);
+		}
+		assertEquals("", table.getValue(values.length, 0));
+		assertEquals("5", table.getValue(values.length + 1, 0));
+	}
+
+	@Test
+	void numericColumnsStayNumericAfterDecimals() {
+		ParsedTable table = new ParsedTable(List.of("Entero", "Decimal"));
+		for (int r = 0; r < 1000; r++) {
+			table.addRow(new String[]{Integer.toString(r), r == 500 ? "2.25" : Integer.toString(-r)});
+		}
+		table.trimToSize();
+		assertEquals("999", table.getValue(999, 0));
+		assertEquals("2.25", table.getValue(500, 1));
+		assertEquals("-499", table.getValue(499, 1));
+		assertTrue(table.estimateSize() < 2 * (8 * 1000 + 1000), "tamaño " + table.estimateSize());
+	}
+
+	/**
+	 * Encuesta típica: respuestas numéricas del 1 al 5, algunas en blanco, y columnas de texto con pocos valores distintos.
+	 * Cada texto distinto se guarda una sola vez, aunque cada fila traiga su propia cadena.
+	 */
+	@Test
+	void surveyTextValuesAreStoredOncePerDistinctValue() {
+		int rows = 20_000;
+		int answers = 20;
+		List<String> headers = new ArrayList<>(List.of("Curso", "Titulación", "Grupo"));
+		for (int q = 1; q <= answers; q++) headers.add("P" + q);
+		ParsedTable table = new ParsedTable(headers);
+		for (int r = 0; r < rows; r++) {
+			String[] row = new String[headers.size()];
+			row[0] = "20" + (20 + r % 5) + "-" + (21 + r % 5);
+			row[1] = "Grado en Ingeniería Informática " + (r % 3);
+			row[2] = "G" + (r % 12);
+			for (int q = 0; q < answers; q++) {
+				row[3 + q] = (r + q) % 7 == 0 ? "" : Integer.toString(1 + (r * 31 + q) % 5);
+			}
+			table.addRow(row);
+		}
+		table.trimToSize();
+
+		assertEquals("Grado en Ingeniería Informática 1", table.getRow(4).get("Titulación"));
+		assertSame(table.getValue(1, 1), table.getValue(19_999, 1));
+		assertSame(table.getValue(0, 0), table.getValue(5, 0));
+		assertEquals("", table.getValue(0, 3));
+		assertEquals("2", table.getValue(1, 3));
+	}
+
+	@Test
+	void projectionReadsMappedColumnsWithoutCopying() {
+		ParsedTable table = new ParsedTable(List.of("Curso", "P1", "Comentario", "P2"));
+		int rows = 100_000;
+		for (int r = 0; r < rows; r++) {
+			table.addRow(new String[]{"2023-24", Integer.toString(r % 5), "texto " + r, r % 3 == 0 ? "" : "4.5"});
+		}
+		table.trimToSize();
+
+		List<Map<String, Object>> projected = table.project(Set.of("Curso", "P2", "P1", "No existe"));
+
+		// Es una vista: no hay una lista copiada detrás y las filas añadidas después se ven a través de ella
+		assertFalse(projected instanceof ArrayList);
+		assertEquals(rows, projected.size());
+		table.addRow(new String[]{"2024-25", "2", "nueva", "3"});
+		assertEquals(rows + 1, projected.size());
+		assertEquals("2024-25", projected.get(rows).get("Curso"));
+
+		Map<String, Object> row = projected.get(3);
+		assertEquals(List.of("Curso", "P1", "P2"), new ArrayList<>(row.keySet()));
+		assertEquals("3", row.get("P1"));
+		assertEquals("", row.get("P2"));
+		assertNull(row.get("Comentario"));
+		assertFalse(row.containsKey("No existe"));
+		assertThrows(UnsupportedOperationException.class, () -> row.put("P1", "5"));
+	}
+}
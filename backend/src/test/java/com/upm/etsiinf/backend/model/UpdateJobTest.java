@@ -0,0 +1,33 @@
+package com.upm.etsiinf.backend.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateJobTest {
+
+	@Test
+	void keepsOnlyTheLastResultsButCountsAll() throws Exception {
+		UpdateJob job = new UpdateJob("job", 3);
+		job.start();
+		for (int i = 0; i < 10; i++) {
+			job.add(new UpdateResult("2024", "C" + i, "Tasa", i, i % 2 == 0, 1, null));
+		}
+		job.complete();
+
+		assertEquals(10, job.getResultCount());
+		UpdateJob.ResultChunk fromStart = job.awaitResults(0, 100, 0);
+		assertEquals(7, fromStart.getFrom());
+		assertEquals(3, fromStart.getResults().size());
+		assertEquals("C7", fromStart.getResults().get(0).getColumn());
+
+		UpdateJob.ResultChunk resumed = job.awaitResults(8, 1, 0);
+		assertEquals(8, resumed.getFrom());
+		assertEquals("C8", resumed.getResults().get(0).getColumn());
+		assertTrue(job.awaitResults(10, 100, 0).getResults().isEmpty());
+
+		UpdateSummary summary = job.getSummary();
+		assertEquals(5, summary.getSucceeded());
+		assertEquals(5, summary.getFailed());
+	}
+}
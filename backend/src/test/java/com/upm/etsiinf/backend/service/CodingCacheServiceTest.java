@@ -0,0 +1,137 @@
+package com.upm.etsiinf.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodingCacheServiceTest {
+
+	@Test
+	void failedLookupsAreNotCached() {
+		FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+		CodingCacheService cache = newCache();
+
+		jdbc.down = true;
+		assertEquals("", cache.getProcessCoding("2024", jdbc, "7"));
+		assertEquals(Map.of("Tasa", ""), cache.getIndicatorCodings("2024", jdbc, List.of("Tasa")));
+
+		jdbc.down = false;
+		assertEquals("P07", cache.getProcessCoding("2024", jdbc, "7"));
+		assertEquals(Map.of("Tasa", "I01"), cache.getIndicatorCodings("2024", jdbc, List.of("Tasa")));
+	}
+
+	@Test
+	void notFoundIsCached() {
+		FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+		CodingCacheService cache = newCache();
+
+		assertEquals("", cache.getProcessCoding("2024", jdbc, "8"));
+		assertEquals(Map.of("Otro", ""), cache.getIndicatorCodings("2024", jdbc, List.of("Otro")));
+		int queries = jdbc.queries.get();
+		assertEquals("", cache.getProcessCoding("2024", jdbc, "8"));
+		assertEquals(Map.of("Otro", ""), cache.getIndicatorCodings("2024", jdbc, List.of("Otro")));
+		assertEquals(queries, jdbc.queries.get());
+	}
+
+	@Test
+	void indicatorNamesMatchLikeTheColumnCollation() {
+		FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+		CodingCacheService cache = newCache();
+
+		Map<String, String> codings = cache.getIndicatorCodings("2024", jdbc, List.of("TASA ", "Satisfacción"));
+		assertEquals("I01", codings.get("TASA "));
+		assertEquals("", codings.get("Satisfacción"));  // dos filas: se resuelve por separado
+		assertEquals(List.of("satisfaccion"), jdbc.singleLookups);
+	}
+
+	@Test
+	void keepsAtMostMaxEntries() {
+		FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+		CodingCacheService cache = newCache(2);
+
+		for (String id : List.of("7", "8", "9")) {
+			cache.getProcessCoding("2024", jdbc, id);
+		}
+		int queries = jdbc.queries.get();
+		assertEquals("P07", cache.getProcessCoding("2024", jdbc, "7"));
+		assertEquals("", cache.getProcessCoding("2024", jdbc, "8"));
+		assertEquals(queries, jdbc.queries.get());
+		assertEquals("", cache.getProcessCoding("2024", jdbc, "9"));  // no cabía: se consulta de nuevo
+		assertEquals(queries + 1, jdbc.queries.get());
+	}
+
+	private static CodingCacheService newCache() {
+		return newCache(10_000);
+	}
+
+	private static CodingCacheService newCache(int maxEntries) {
+		ObjectProvider<MeterRegistry> noMetrics = new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+		return new CodingCacheService(noMetrics, 300, maxEntries);
+	}
+
+	/**
+	 * Bbdd de un año simulada, con la collation habitual de MySQL (sin mayúsculas, tildes ni espacios finales).
+	 * "Satisfaccion" está repetido con distintas tildes.
+	 */
+	private static final class FakeJdbcTemplate extends JdbcTemplate {
+		private final AtomicInteger queries = new AtomicInteger();
+		private final List<String> singleLookups = new ArrayList<>();
+		private final Map<String, String> indicators = new LinkedHashMap<>();
+		private volatile boolean down;
+
+		private FakeJdbcTemplate() {
+			indicators.put("Tasa", "I01");
+			indicators.put("Satisfaccion", "I02");
+			indicators.put("Satisfacción", "I03");
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T queryForObject(String sql, Object[] args, Class<T> requiredType) {
+			queries.incrementAndGet();
+			if (down) throw new DataAccessResourceFailureException("Sin conexión");
+			String arg = Collation.normalize(String.valueOf(args[0]));
+			if (sql.contains("FROM process")) {
+				if (!arg.equals("7")) throw new EmptyResultDataAccessException(1);
+				return (T) "P07";
+			}
+			singleLookups.add(arg);
+			List<String> matches = new ArrayList<>();
+			indicators.forEach((name, coding) -> {
+				if (Collation.normalize(name).equals(arg)) matches.add(coding);
+			});
+			if (matches.size() != 1) throw new EmptyResultDataAccessException(1);
+			return (T) matches.get(0);
+		}
+
+		@Override
+		public List<Map<String, Object>> queryForList(String sql, Object... args) {
+			queries.incrementAndGet();
+			if (down) throw new DataAccessResourceFailureException("Sin conexión");
+			List<Map<String, Object>> rows = new ArrayList<>();
+			for (Object arg : args) {
+				indicators.forEach((name, coding) -> {
+					if (Collation.normalize(name).equals(Collation.normalize((String) arg))) {
+						Map<String, Object> row = new LinkedHashMap<>();
+						row.put("indicator_name", name);
+						row.put("coding", coding);
+						rows.add(row);
+					}
+				});
+			}
+			return rows;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ReferenceData;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseServiceReferenceCacheTest {
+
+	@Test
+	void servesCachedListWithStableEtagUntilInvalidated() {
+		FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+		DatabaseService service = newService(jdbc, 300);
+
+		ReferenceData first = service.getProcessesReference();
+		ReferenceData second = service.getProcessesReference();
+		assertEquals(1, jdbc.queries.get());
+		assertEquals(first.getEtag(), second.getEtag());
+		assertThrows(UnsupportedOperationException.class, () -> second.getRows().clear());
+
+		jdbc.processName = "Proceso modificado";
+		assertEquals(first.getEtag(), service.getProcessesReference().getEtag());
+		service.invalidateReferenceData();
+		ReferenceData reloaded = service.getProcessesReference();
+		assertEquals(2, jdbc.queries.get());
+		assertNotEquals(first.getEtag(), reloaded.getEtag());
+	}
+
+	@Test
+	void sameContentKeepsEtagWithoutCache() {
+		FakeJdbcTemplate jdbc = new FakeJdbcTemplate();
+		DatabaseService service = newService(jdbc, 0);
+
+		String etag = service.getAttributesReference().getEtag();
+		assertEquals(etag, service.getAttributesReference().getEtag());
+		assertEquals(2, jdbc.queries.get());
+	}
+
+	private static DatabaseService newService(JdbcTemplate jdbc, long ttlSeconds) {
+		ObjectProvider<MeterRegistry> noMetrics = new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+		return new DatabaseService(jdbc, null, new CodingCacheService(noMetrics, 0, 10000), noMetrics,
+				1000, 1, 20000, true, 1000, 3, 100, ttlSeconds);
+	}
+
+	/**
+	 * Bbdd por defecto simulada: devuelve siempre un proceso y cuenta las consultas.
+	 */
+	private static final class FakeJdbcTemplate extends JdbcTemplate {
+		private final AtomicInteger queries = new AtomicInteger();
+		private volatile String processName = "Proceso de prueba";
+
+		@Override
+		public List<Map<String, Object>> queryForList(String sql) {
+			queries.incrementAndGet();
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("id", 1);
+			row.put("coding", "P01");
+			row.put("process_name", processName);
+			List<Map<String, Object>> rows = new ArrayList<>();
+			rows.add(row);
+			return rows;
+		}
+	}
+}
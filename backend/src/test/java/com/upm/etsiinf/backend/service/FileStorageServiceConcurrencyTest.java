@@ -0,0 +1,190 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStorageServiceConcurrencyTest {
+
+	private static final int THREADS = 64;
+	private static final int UPLOADS_PER_THREAD = 50;
+
+	@TempDir
+	Path storeDir;
+
+	@TempDir
+	Path sourceDir;
+
+	@Test
+	void concurrentUploadersLoseNothing() throws Exception {
+		FileStorageService storage = newStorage(Long.MAX_VALUE);
+		List<String> ids = runConcurrently(storage);
+
+		assertEquals(THREADS * UPLOADS_PER_THREAD, storage.storedFiles());
+		for (String id : ids) {
+			ParsedTable table = storage.getCSVFile(id);
+			assertNotNull(table, id);
+			assertEquals(id, table.getValue(0, 0));
+		}
+	}
+
+	@Test
+	void concurrentUploadersWithEvictionLoseNothing() throws Exception {
+		// Presupuesto muy pequeño: casi todos los archivos se quitan de memoria y se vuelven a cargar del almacén
+		FileStorageService storage = newStorage(4096);
+		List<String> ids = runConcurrently(storage);
+
+		for (String id : ids) {
+			ParsedTable table = storage.getCSVFile(id);
+			assertNotNull(table, id);
+			assertEquals(id, table.getValue(0, 0));
+		}
+		assertTrue(storage.storedBytes() >= 0);
+	}
+
+	@Test
+	void onlyOneUploaderWinsTheSameId() throws Exception {
+		FileStorageService storage = newStorage(Long.MAX_VALUE);
+		String id = UUID.randomUUID().toString();
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			tasks.add(() -> storage.saveCSVFile(id, table(id)));
+		}
+		assertEquals(1, countTrue(tasks));
+
+		tasks.clear();
+		for (int t = 0; t < THREADS; t++) {
+			tasks.add(() -> storage.removeFile(id));
+		}
+		assertEquals(1, countTrue(tasks));
+		assertNull(storage.getCSVFile(id));
+	}
+
+	@Test
+	void concurrentFirstAccessReadsSheetOnce() throws Exception {
+		FileStorageService storage = newStorage(Long.MAX_VALUE);
+		Path book = Files.createTempFile(sourceDir, "book-", ".xlsx");
+		try (Workbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(book)) {
+			fillSheet(wb.createSheet("A"), 10);
+			wb.createSheet("Vacía").createRow(0).createCell(0).setCellValue("Notas");
+			fillSheet(wb.createSheet("B"), 1000);
+			wb.write(out);
+		}
+		Map<String, Integer> headerRows = new FilePreviewService(noMetrics(), 200, 1000, 200, 1).indexExcel(book, null);
+		assertEquals(List.of("A", "B"), new ArrayList<>(headerRows.keySet()));
+
+		String id = UUID.randomUUID().toString();
+		assertTrue(storage.saveExcelWorkbook(id, book, headerRows));
+		assertEquals(List.of("A", "B"), storage.getSheetNames(id));
+		assertEquals(1, storage.storedFiles());  // solo el índice: ninguna hoja leída todavía
+
+		List<Callable<ParsedTable>> tasks = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			tasks.add(() -> storage.getTable(id, "B"));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		ParsedTable first = null;
+		for (Future<ParsedTable> future : executor.invokeAll(tasks)) {
+			ParsedTable table = future.get();
+			if (first == null) first = table;
+			assertSame(first, table);  // todos reciben la misma hoja leída una sola vez
+		}
+		executor.shutdown();
+		assertEquals(1000, first.getRowCount());
+		assertEquals(2, storage.storedFiles());
+		assertNull(storage.getTable(id, "Vacía"));
+
+		assertTrue(storage.removeFile(id));
+		assertEquals(0, storage.storedFiles());
+		assertNull(storage.getTable(id, "A"));
+	}
+
+	/**
+	 * Escribe una cabecera de dos columnas seguida de 'rows' filas numéricas.
+	 */
+	private static void fillSheet(Sheet sheet, int rows) {
+		Row header = sheet.createRow(0);
+		header.createCell(0).setCellValue("Curso");
+		header.createCell(1).setCellValue("Valor");
+		for (int r = 1; r <= rows; r++) {
+			Row row = sheet.createRow(r);
+			row.createCell(0).setCellValue(2000 + r);
+			row.createCell(1).setCellValue(r);
+		}
+	}
+
+	private List<String> runConcurrently(FileStorageService storage) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<List<String>>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				List<String> saved = new ArrayList<>();
+				for (int i = 0; i < UPLOADS_PER_THREAD; i++) {
+					String id = UUID.randomUUID().toString();
+					assertTrue(storage.saveCSVFile(id, table(id)));
+					assertNotNull(storage.getCSVFile(id));
+					saved.add(id);
+				}
+				return saved;
+			}));
+		}
+		start.countDown();
+		List<String> ids = new ArrayList<>();
+		for (Future<List<String>> future : futures) {
+			ids.addAll(future.get(60, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+		return ids;
+	}
+
+	private int countTrue(List<Callable<Boolean>> tasks) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		int count = 0;
+		for (Future<Boolean> future : executor.invokeAll(tasks)) {
+			if (future.get()) count++;
+		}
+		executor.shutdown();
+		return count;
+	}
+
+	private FileStorageService newStorage(long maxBytes) throws Exception {
+		return new FileStorageService(new FilePreviewService(noMetrics(), 200, 1000, 200, 1),
+				new LocalDiskUploadStore(storeDir.toString()), noMetrics(), maxBytes, 0, 24);
+	}
+
+	private static ObjectProvider<MeterRegistry> noMetrics() {
+		return new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+	}
+
+	private static ParsedTable table(String id) {
+		ParsedTable table = new ParsedTable(List.of("id", "valor"));
+		table.addRow(new String[]{id, "1"});
+		table.trimToSize();
+		return table;
+	}
+}
@@ -0,0 +1,117 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Varias instancias (o la misma tras reiniciar) que comparten el directorio del almacén.
+ */
+class FileStorageServicePersistenceTest {
+
+	@TempDir
+	Path storeDir;
+
+	@TempDir
+	Path uploadDir;
+
+	@Test
+	void otherInstanceServesCsvAndIdIsReservedForAll() throws Exception {
+		FileStorageService first = newInstance();
+		FileStorageService second = newInstance();
+		String id = UUID.randomUUID().toString();
+		ParsedTable table = new ParsedTable(List.of("Curso", "Valor"));
+		table.addRow(new String[]{"2023-24", "4,5"});
+		table.addRow(new String[]{"2024-25", ""});
+		assertTrue(first.saveCSVFile(id, table));
+
+		ParsedTable loaded = second.getCSVFile(id);
+		assertNotNull(loaded);
+		assertEquals(List.of("Curso", "Valor"), loaded.getHeaders());
+		assertEquals(2, loaded.getRowCount());
+		assertEquals("4,5", loaded.getValue(0, 1));
+		assertEquals("", loaded.getValue(1, 1));
+		assertFalse(second.saveCSVFile(id, table));
+
+		assertTrue(second.removeFile(id));
+		assertNull(newInstance().getCSVFile(id));
+	}
+
+	@Test
+	void workbookSheetsAreReadOnceAcrossInstances() throws Exception {
+		Path book = Files.createTempFile(uploadDir, "book-", ".xlsx");
+		try (Workbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(book)) {
+			Sheet sheet = wb.createSheet("Resultados");
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue("Curso");
+			header.createCell(1).setCellValue("Valor");
+			for (int r = 1; r <= 20; r++) {
+				Row row = sheet.createRow(r);
+				row.createCell(0).setCellValue(2000 + r);
+				row.createCell(1).setCellValue(r);
+			}
+			wb.write(out);
+		}
+		Map<String, Integer> headerRows = new FilePreviewService(noMetrics(), 200, 1000, 200, 1).indexExcel(book, null);
+
+		String id = UUID.randomUUID().toString();
+		assertTrue(newInstance().saveExcelWorkbook(id, book, headerRows));
+		assertFalse(Files.exists(book));
+
+		FileStorageService second = newInstance();
+		assertEquals(List.of("Resultados"), second.getSheetNames(id));
+		assertEquals(20, second.getTable(id, "Resultados").getRowCount());
+
+		// La hoja leída por la segunda instancia ya está en el almacén: no hace falta el original
+		Files.delete(new LocalDiskUploadStore(storeDir.toString()).source(id));
+		assertEquals(20, newInstance().getTable(id, null).getRowCount());
+	}
+
+	@Test
+	void uploadReadFromMemoryIsNotPurged() throws Exception {
+		FileStorageService instance = newInstance();
+		LocalDiskUploadStore store = new LocalDiskUploadStore(storeDir.toString());
+		String used = UUID.randomUUID().toString();
+		String unused = UUID.randomUUID().toString();
+		ParsedTable table = new ParsedTable(List.of("Curso"));
+		table.addRow(new String[]{"2024-25"});
+		assertTrue(instance.saveCSVFile(used, table));
+		assertTrue(instance.saveCSVFile(unused, table));
+
+		// Ambos llevan más de la retención sin leerse del disco; solo 'used' se sigue leyendo (de memoria)
+		FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 48 * 3_600_000L);
+		Files.setLastModifiedTime(storeDir.resolve(used), old);
+		Files.setLastModifiedTime(storeDir.resolve(unused), old);
+		assertNotNull(instance.getCSVFile(used));
+
+		assertEquals(1, store.purge(24 * 3_600_000L));
+		assertNotNull(newInstance().getCSVFile(used));
+		assertNull(newInstance().getCSVFile(unused));
+	}
+
+	private FileStorageService newInstance() throws Exception {
+		return new FileStorageService(new FilePreviewService(noMetrics(), 200, 1000, 200, 1),
+				new LocalDiskUploadStore(storeDir.toString()), noMetrics(), Long.MAX_VALUE, 0, 24);
+	}
+
+	private static ObjectProvider<MeterRegistry> noMetrics() {
+		return new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+	}
+}
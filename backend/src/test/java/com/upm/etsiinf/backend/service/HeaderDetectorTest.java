@@ -0,0 +1,102 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.HeaderDetection;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeaderDetectorTest {
+
+	private static final int WINDOW = 200;
+	private static final int WIDE_COLUMN = 16000;  // columna muy a la derecha: la hoja es ancha pero casi vacía
+
+	@Test
+	void detectsHeaderAfterInstructionRows() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = wb.createSheet();
+			sheet.createRow(0).createCell(0).setCellValue("Instrucciones: rellene la tabla");
+			fillTable(sheet, 2, 10);
+
+			HeaderDetection header = new HeaderDetector(WINDOW).detect(sheet);
+			assertTrue(header.isFound());
+			assertEquals(2, header.getRowIndex());
+			assertEquals(1.0, header.getConfidence(), 1e-9);
+			assertEquals(3, header.getTextCells());
+		}
+	}
+
+	@Test
+	void ignoresHeaderOutsideWindow() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = wb.createSheet();
+			for (int r = 0; r < 50; r++) {
+				sheet.createRow(r).createCell(0).setCellValue("Nota " + r);
+			}
+			fillTable(sheet, 50, 10);
+
+			assertFalse(new HeaderDetector(10).detect(sheet).isFound());
+			assertEquals(50, new HeaderDetector(WINDOW).detect(sheet).getRowIndex());
+		}
+	}
+
+	@Test
+	void mixedDataRowLowersConfidence() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = wb.createSheet();
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue("Curso");
+			header.createCell(1).setCellValue("Valor");
+			Row data = sheet.createRow(1);
+			data.createCell(0).setCellValue("2023-24");
+			data.createCell(1).setCellValue(1.5);
+
+			HeaderDetection detection = new HeaderDetector(WINDOW).detect(sheet);
+			assertEquals(0, detection.getRowIndex());
+			assertEquals(0.5, detection.getConfidence(), 1e-9);
+		}
+	}
+
+	/**
+	 * La detección solo recorre la ventana, así que su coste no depende de la longitud de la hoja
+	 * (el tiempo se mide en HeaderDetectionBenchmark).
+	 */
+	@Test
+	void scansOnlyTheWindowRegardlessOfSheetLength() throws Exception {
+		int scanned = -1;
+		for (int rows : new int[]{1_000, 10_000}) {
+			try (Workbook wb = new XSSFWorkbook()) {
+				Sheet sheet = wb.createSheet();
+				for (int r = 0; r < 5; r++) {
+					sheet.createRow(r).createCell(WIDE_COLUMN).setCellValue("Texto de ayuda " + r);
+				}
+				fillTable(sheet, 5, rows);
+
+				HeaderDetection header = new HeaderDetector(WINDOW).detect(sheet);
+				assertEquals(5, header.getRowIndex());
+				assertTrue(header.getRowsScanned() <= WINDOW, rows + " filas: " + header.getRowsScanned() + " examinadas");
+				if (scanned >= 0) assertEquals(scanned, header.getRowsScanned());
+				scanned = header.getRowsScanned();
+			}
+		}
+	}
+
+	/**
+	 * Escribe una cabecera de tres columnas en 'headerRow' seguida de 'rows' filas numéricas.
+	 */
+	private static void fillTable(Sheet sheet, int headerRow, int rows) {
+		Row header = sheet.createRow(headerRow);
+		header.createCell(0).setCellValue("Curso");
+		header.createCell(1).setCellValue("Matriculados");
+		header.createCell(2).setCellValue("Aprobados");
+		for (int r = 1; r <= rows; r++) {
+			Row row = sheet.createRow(headerRow + r);
+			row.createCell(0).setCellValue(2000 + r % 25);
+			row.createCell(1).setCellValue(r);
+			row.createCell(2).setCellValue(r / 2);
+		}
+	}
+}
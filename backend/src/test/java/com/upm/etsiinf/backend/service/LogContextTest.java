@@ -0,0 +1,35 @@
+package com.upm.etsiinf.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogContextTest {
+
+	@Test
+	void propagatesRequestIdToWorkerThreadAndCleansUp() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			MDC.put(LogContext.REQUEST_ID, "peticion-1");
+			String seen = executor.submit(LogContext.propagate(() -> MDC.get(LogContext.REQUEST_ID))).get();
+			MDC.remove(LogContext.REQUEST_ID);
+
+			assertEquals("peticion-1", seen);
+			assertNull(executor.submit(() -> MDC.get(LogContext.REQUEST_ID)).get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void sampleShowsSizeAndFirstElements() {
+		assertEquals("5 elementos [1, 2, ...]", LogContext.sample(List.of(1, 2, 3, 4, 5), 2).toString());
+		assertEquals("2 elementos [1, 2]", LogContext.sample(List.of(1, 2), 5).toString());
+		assertEquals("2 elementos [...]", LogContext.sample(List.of(1, 2), 0).toString());
+	}
+}
@@ -0,0 +1,63 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SheetExecutorTest {
+
+	private static final int SHEETS = 40;
+
+	@Test
+	void keepsWorkbookOrderAndSkipsSheetsWithoutHeader() throws Exception {
+		SheetExecutor executor = new SheetExecutor(4);
+		try {
+			List<String> names = new ArrayList<>();
+			List<Callable<ParsedTable>> tasks = new ArrayList<>();
+			for (int i = 0; i < SHEETS; i++) {
+				String name = "Grado " + i;
+				int sheet = i;
+				names.add(name);
+				tasks.add(() -> {
+					Thread.sleep((SHEETS - sheet) % 7);  // las primeras hojas terminan las últimas
+					if (sheet % 5 == 0) return null;     // hoja sin cabecera
+					ParsedTable table = new ParsedTable(List.of("Hoja"));
+					table.addRow(new String[]{name});
+					return table;
+				});
+			}
+
+			Map<String, ParsedTable> sheets = executor.readAll(names, tasks);
+
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < SHEETS; i++) {
+				if (i % 5 != 0) expected.add("Grado " + i);
+			}
+			assertEquals(expected, new ArrayList<>(sheets.keySet()));
+			sheets.forEach((name, table) -> assertEquals(name, table.getValue(0, 0)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void propagatesSheetFailure() {
+		SheetExecutor executor = new SheetExecutor(4);
+		try {
+			List<Callable<ParsedTable>> tasks = List.of(
+					() -> new ParsedTable(List.of("A")),
+					() -> { throw new IOException("hoja corrupta"); });
+			IOException e = assertThrows(IOException.class, () -> executor.readAll(List.of("A", "B"), tasks));
+			assertEquals("hoja corrupta", e.getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
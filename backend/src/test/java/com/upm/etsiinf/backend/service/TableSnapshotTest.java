@@ -0,0 +1,100 @@
+package com.upm.etsiinf.backend.service;
+
+import com.upm.etsiinf.backend.model.ParsedTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableSnapshotTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void mappedSheetsMatchTheWrittenTables() throws Exception {
+		ParsedTable results = new ParsedTable(List.of("Curso", "Valor", "Valor", "Comentario"));
+		results.addRow(new String[]{"2023-24", "4,5", "12", "Señalización"});
+		results.addRow(new String[]{"2024-25", "", "-3", ""});
+		results.addRow(new String[]{"2023-24", "007", "12", "ünïcödé ✓"});
+		ParsedTable empty = new ParsedTable(List.of("Vacía"));
+		Map<String, ParsedTable> sheets = new LinkedHashMap<>();
+		sheets.put("Resultados", results);
+		sheets.put("Sin filas", empty);
+
+		Map<String, ParsedTable> mapped = writeAndMap(sheets);
+
+		assertEquals(List.of("Resultados", "Sin filas"), List.copyOf(mapped.keySet()));
+		ParsedTable table = mapped.get("Resultados");
+		assertEquals(results.getHeaders(), table.getHeaders());
+		assertEquals(3, table.getRowCount());
+		for (int r = 0; r < 3; r++) {
+			for (int c = 0; c < 4; c++) {
+				assertEquals(results.getValue(r, c), table.getValue(r, c));
+			}
+			assertEquals(results.getRow(r), table.getRow(r));
+		}
+		assertEquals("007", table.getValue(2, 1));
+		assertEquals(results.getRows(1, 2), table.getRows(1, 2));
+		assertEquals(results.project(List.of("Comentario", "Curso")), table.project(List.of("Comentario", "Curso")));
+		assertEquals(0, mapped.get("Sin filas").getRowCount());
+		assertEquals(List.of("Vacía"), mapped.get("Sin filas").getHeaders());
+	}
+
+	@Test
+	void largeDictionariesUseWiderCodes() throws Exception {
+		ParsedTable table = new ParsedTable(List.of("Id", "Grupo"));
+		for (int i = 0; i < 70_000; i++) {
+			table.addRow(new String[]{"id-" + i, "g" + (i % 7)});
+		}
+		Map<String, ParsedTable> mapped = writeAndMap(Map.of("", table));
+
+		ParsedTable loaded = mapped.get("");
+		assertEquals(70_000, loaded.getRowCount());
+		assertEquals("id-0", loaded.getValue(0, 0));
+		assertEquals("id-69999", loaded.getValue(69_999, 0));
+		assertEquals("g6", loaded.getValue(300, 1));
+		assertTrue(loaded.estimateSize() < table.estimateSize());
+	}
+
+	@Test
+	void mappedTablesAreReadOnly() throws Exception {
+		ParsedTable table = new ParsedTable(List.of("A"));
+		table.addRow(new String[]{"1"});
+		ParsedTable loaded = writeAndMap(Map.of("", table)).get("");
+
+		assertThrows(UnsupportedOperationException.class, () -> loaded.addRow(new String[]{"2"}));
+		loaded.trimToSize();
+		assertEquals(1, loaded.getRowCount());
+	}
+
+	@Test
+	void rejectsUnknownContent() throws Exception {
+		Path file = dir.resolve("other.upload");
+		Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			assertThrows(IOException.class, () -> TableSnapshot.map(channel, 0));
+		}
+	}
+
+	private Map<String, ParsedTable> writeAndMap(Map<String, ParsedTable> sheets) throws Exception {
+		Path file = Files.createTempFile(dir, "snapshot", ".upload");
+		try (OutputStream out = Files.newOutputStream(file)) {
+			out.write(7);  // como en el almacén, la instantánea no empieza al principio del archivo
+			TableSnapshot.write(out, sheets);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return TableSnapshot.map(channel, 1);
+		}
+	}
+}